@@ -0,0 +1,118 @@
+package com.paprotskyi.twostatecircuitbreaker.benchmark;
+
+import com.paprotskyi.twostatecircuitbreaker.engine.ThresholdCircuitBreaker;
+import com.paprotskyi.twostatecircuitbreaker.engine.ThresholdCircuitBreakerConfig;
+import com.paprotskyi.twostatecircuitbreaker.exception.FailResponseException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single protected call: tryAcquirePermission followed by onSuccess or onError,
+ * for the ThresholdCircuitBreaker and the stock Resilience4j CircuitBreakerStateMachine.
+ * The number of threads is set by the {@link CircuitBreakerBenchmarkRunner}.
+ * <p>
+ * The CLOSED breakers are configured with 100% thresholds, so the mixed failures never open them.
+ * The OPEN breakers are opened by a burst of failures before each iteration, because the ThresholdCircuitBreaker
+ * always leaves the OPEN state after 10 seconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitBreakerBenchmark {
+
+  private static final long CALL_DURATION_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final FailResponseException FAILURE = new FailResponseException();
+
+  @Param({"THRESHOLD_SYNCHRONIZED", "THRESHOLD_STRIPED", "RESILIENCE4J"})
+  public Implementation implementation;
+
+  @Param({"CLOSED", "OPEN"})
+  public CircuitBreaker.State state;
+
+  @Param({"0.0", "0.1", "0.5"})
+  public double failureRatio;
+
+  private CircuitBreaker circuitBreaker;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+        .slidingWindowSize(100)
+        .minimumNumberOfCalls(10)
+        .failureRateThreshold(state == CircuitBreaker.State.CLOSED ? 100 : 50)
+        .slowCallRateThreshold(100)
+        .slowCallDurationThreshold(Duration.ofSeconds(1))
+        .waitDurationInOpenState(Duration.ofHours(1))
+        .recordExceptions(FailResponseException.class)
+        .build();
+    circuitBreaker = implementation.create(config);
+    if (state == CircuitBreaker.State.OPEN) {
+      while (circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+        circuitBreaker.tryAcquirePermission();
+        circuitBreaker.onError(CALL_DURATION_IN_NANOS, TimeUnit.NANOSECONDS, FAILURE);
+      }
+    }
+  }
+
+  @Benchmark
+  public boolean acquireAndRecord() {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      return false;
+    }
+    if (ThreadLocalRandom.current().nextDouble() < failureRatio) {
+      circuitBreaker.onError(CALL_DURATION_IN_NANOS, TimeUnit.NANOSECONDS, FAILURE);
+    } else {
+      circuitBreaker.onSuccess(CALL_DURATION_IN_NANOS, TimeUnit.NANOSECONDS);
+    }
+    return true;
+  }
+
+  public enum Implementation {
+    THRESHOLD_SYNCHRONIZED {
+      @Override
+      CircuitBreaker create(CircuitBreakerConfig config) {
+        return new ThresholdCircuitBreaker("benchmark", Clock.systemUTC(), config,
+            ThresholdCircuitBreakerConfig.builder()
+                .slidingWindowImplementation(ThresholdCircuitBreakerConfig.SlidingWindowImplementation.SYNCHRONIZED)
+                .build());
+      }
+    },
+    THRESHOLD_STRIPED {
+      @Override
+      CircuitBreaker create(CircuitBreakerConfig config) {
+        return new ThresholdCircuitBreaker("benchmark", Clock.systemUTC(), config,
+            ThresholdCircuitBreakerConfig.builder()
+                .slidingWindowImplementation(ThresholdCircuitBreakerConfig.SlidingWindowImplementation.STRIPED)
+                .build());
+      }
+    },
+    RESILIENCE4J {
+      @Override
+      CircuitBreaker create(CircuitBreakerConfig config) {
+        return CircuitBreaker.of("benchmark", config);
+      }
+    };
+
+    abstract CircuitBreaker create(CircuitBreakerConfig config);
+  }
+}
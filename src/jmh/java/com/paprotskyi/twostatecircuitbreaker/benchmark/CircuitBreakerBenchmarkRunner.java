@@ -0,0 +1,50 @@
+package com.paprotskyi.twostatecircuitbreaker.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks once per thread count, because JMH takes a single thread count per run.
+ * The GC profiler is always enabled, so every result also reports the allocation rate per operation
+ * (gc.alloc.rate.norm). The results are written as JSON files, one per thread count.
+ * <p>
+ * Usage: CircuitBreakerBenchmarkRunner [threads, e.g. 1,4,16,64] [benchmark regexp] [results directory]
+ */
+public class CircuitBreakerBenchmarkRunner {
+
+  private static final String DEFAULT_THREADS = "1,4,16,64";
+  private static final String DEFAULT_INCLUDE = CircuitBreakerBenchmark.class.getSimpleName();
+  private static final String DEFAULT_RESULTS_DIRECTORY = "build/reports/jmh";
+
+  public static void main(String[] args) throws RunnerException {
+    int[] threadCounts = Arrays.stream(argument(args, 0, DEFAULT_THREADS).split(","))
+        .map(String::trim)
+        .mapToInt(Integer::parseInt)
+        .toArray();
+    String include = argument(args, 1, DEFAULT_INCLUDE);
+    File resultsDirectory = new File(argument(args, 2, DEFAULT_RESULTS_DIRECTORY));
+    resultsDirectory.mkdirs();
+
+    for (int threads : threadCounts) {
+      Options options = new OptionsBuilder()
+          .include(include)
+          .threads(threads)
+          .addProfiler(GCProfiler.class)
+          .resultFormat(ResultFormatType.JSON)
+          .result(new File(resultsDirectory, "threads-" + threads + ".json").getPath())
+          .build();
+      new Runner(options).run();
+    }
+  }
+
+  private static String argument(String[] args, int index, String defaultValue) {
+    return args.length > index && !args[index].isBlank() ? args[index] : defaultValue;
+  }
+}
@@ -7,6 +7,7 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 @Slf4j
 @RestController
@@ -25,4 +26,9 @@ public class TestController {
   public boolean testSuccessRateThreshold() throws InterruptedException {
     return testService.callExternalServiceWithThresholdBreaker();
   }
+
+  @GetMapping("/test-threshold-reactive")
+  public Mono<Boolean> testSuccessRateThresholdReactive() {
+    return testService.callExternalServiceWithThresholdBreakerReactive();
+  }
 }
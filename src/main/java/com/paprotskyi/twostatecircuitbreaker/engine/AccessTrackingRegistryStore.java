@@ -0,0 +1,154 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.core.RegistryStore;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The RegistryStore of the {@link ThresholdCircuitBreakerRegistry}, which also keeps the time of the last lookup
+ * of every circuit breaker, so a bounded registry can find the idle and the least recently used ones.
+ * The values are a live view of the map, they are never copied.
+ */
+class AccessTrackingRegistryStore implements RegistryStore<CircuitBreaker> {
+
+  //the access time is rewritten only when it is older than this, so a hot breaker does not write on every lookup
+  private static final long ACCESS_TIME_GRANULARITY_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final boolean isAccessTracked;
+  //the entry, which the current thread removes only if it is still kept under its name
+  private final ThreadLocal<Entry> expectedRemovedEntry = new ThreadLocal<>();
+  private final Collection<CircuitBreaker> values = new AbstractCollection<>() {
+    @Override
+    public Iterator<CircuitBreaker> iterator() {
+      Iterator<Entry> iterator = entries.values().iterator();
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public CircuitBreaker next() {
+          return iterator.next().circuitBreaker;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return entries.size();
+    }
+  };
+
+  /**
+   * @param isAccessTracked false if the registry is unbounded, then the lookups are not tracked at all
+   */
+  AccessTrackingRegistryStore(boolean isAccessTracked) {
+    this.isAccessTracked = isAccessTracked;
+  }
+
+  @Override
+  public CircuitBreaker computeIfAbsent(String key,
+                                        Function<? super String, ? extends CircuitBreaker> mappingFunction) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = entries.computeIfAbsent(key, name -> new Entry(mappingFunction.apply(name), System.nanoTime()));
+    } else {
+      touch(entry);
+    }
+    return entry.circuitBreaker;
+  }
+
+  @Override
+  public CircuitBreaker putIfAbsent(String key, CircuitBreaker value) {
+    Entry previous = entries.putIfAbsent(key, new Entry(value, System.nanoTime()));
+    return previous == null ? null : previous.circuitBreaker;
+  }
+
+  @Override
+  public Optional<CircuitBreaker> find(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    touch(entry);
+    return Optional.of(entry.circuitBreaker);
+  }
+
+  @Override
+  public Optional<CircuitBreaker> remove(String name) {
+    Entry expectedEntry = expectedRemovedEntry.get();
+    if (expectedEntry != null) {
+      return entries.remove(name, expectedEntry) ? Optional.of(expectedEntry.circuitBreaker) : Optional.empty();
+    }
+    return Optional.ofNullable(entries.remove(name)).map(entry -> entry.circuitBreaker);
+  }
+
+  /**
+   * Removes the entry only if it is still kept under the name, e.g. it has not been replaced meanwhile.
+   * The removal is made by the given registry removal, so the registry publishes its removal event.
+   *
+   * @param registryRemoval the removal of the registry, which calls {@link #remove(String)} of this store
+   */
+  Optional<CircuitBreaker> remove(String name, Entry entry,
+                                  Function<String, Optional<CircuitBreaker>> registryRemoval) {
+    expectedRemovedEntry.set(entry);
+    try {
+      return registryRemoval.apply(name);
+    } finally {
+      expectedRemovedEntry.remove();
+    }
+  }
+
+  @Override
+  public Optional<CircuitBreaker> replace(String name, CircuitBreaker newEntry) {
+    return Optional.ofNullable(entries.replace(name, new Entry(newEntry, System.nanoTime())))
+        .map(entry -> entry.circuitBreaker);
+  }
+
+  @Override
+  public Collection<CircuitBreaker> values() {
+    return values;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * A weakly consistent iterator, which can be used concurrently with the lookups.
+   */
+  Iterator<Map.Entry<String, Entry>> entryIterator() {
+    return entries.entrySet().iterator();
+  }
+
+  private void touch(Entry entry) {
+    if (!isAccessTracked) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (now - entry.lastAccessNanos > ACCESS_TIME_GRANULARITY_IN_NANOS) {
+      entry.lastAccessNanos = now;
+    }
+  }
+
+  static final class Entry {
+
+    final CircuitBreaker circuitBreaker;
+    volatile long lastAccessNanos;
+
+    private Entry(CircuitBreaker circuitBreaker, long lastAccessNanos) {
+      this.circuitBreaker = circuitBreaker;
+      this.lastAccessNanos = lastAccessNanos;
+    }
+  }
+}
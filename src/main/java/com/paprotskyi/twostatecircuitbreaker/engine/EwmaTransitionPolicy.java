@@ -0,0 +1,139 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/**
+ * A transition policy based on the exponentially weighted moving averages (EWMA) of the failure rate,
+ * the slow call rate and the call duration. It keeps a few primitive fields instead of a buffer of calls,
+ * each one is updated with a CAS on every recorded outcome, so it never blocks and costs the same
+ * for any sliding window size.
+ * <p>
+ * The smoothing factor is 2 / (slidingWindowSize + 1), so an average follows roughly the same number of
+ * latest calls as the sliding window. The rating has the same shape as the weighted sum of
+ * the {@link StateTransitionCalculator}, with the same {@link StateTransitionParameters}:
+ * the success part is the share of the calls, which are both successful and within the slow call threshold
+ * by their average duration. Until the minimum number of calls is recorded, the rates are taken as 0,
+ * the same as in the {@link SimpleMetrics}.
+ */
+public class EwmaTransitionPolicy implements TransitionPolicy {
+
+  private static final VarHandle FAILURE_RATE;
+  private static final VarHandle SLOW_CALL_RATE;
+  private static final VarHandle DURATION_IN_NANOS;
+  private static final VarHandle NUMBER_OF_CALLS;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      FAILURE_RATE = lookup.findVarHandle(EwmaTransitionPolicy.class, "failureRate", double.class);
+      SLOW_CALL_RATE = lookup.findVarHandle(EwmaTransitionPolicy.class, "slowCallRate", double.class);
+      DURATION_IN_NANOS = lookup.findVarHandle(EwmaTransitionPolicy.class, "durationInNanos", double.class);
+      NUMBER_OF_CALLS = lookup.findVarHandle(EwmaTransitionPolicy.class, "numberOfCalls", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final double smoothingFactor;
+  private final long slowCallDurationThresholdInNanos;
+  private final int minimumNumberOfCalls;
+  private volatile StateTransitionParameters parameters;
+
+  private volatile double failureRate;
+  private volatile double slowCallRate;
+  private volatile double durationInNanos;
+  private volatile long numberOfCalls;
+
+  public EwmaTransitionPolicy(CircuitBreakerConfig circuitBreakerConfig, StateTransitionParameters parameters) {
+    this.smoothingFactor = 2.0 / (circuitBreakerConfig.getSlidingWindowSize() + 1);
+    this.slowCallDurationThresholdInNanos = circuitBreakerConfig.getSlowCallDurationThreshold().toNanos();
+    this.minimumNumberOfCalls = circuitBreakerConfig.getMinimumNumberOfCalls();
+    this.parameters = Objects.requireNonNull(parameters, "State transition parameters must not be null");
+  }
+
+  @Override
+  public void onSuccess(long durationInNanos) {
+    record(0.0, durationInNanos);
+  }
+
+  @Override
+  public void onError(long durationInNanos) {
+    record(1.0, durationInNanos);
+  }
+
+  /**
+   * The batch is applied in one step: n samples of the batch rates move an average as far as one sample
+   * with the smoothing factor 1 - (1 - factor)^n. The slow calls are taken from the counts, not from the mean duration.
+   */
+  @Override
+  public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                      int numberOfFailedCalls, int numberOfSlowFailedCalls, long meanDurationInNanos) {
+    long numberOfBatchCalls = (long) numberOfSuccessfulCalls + numberOfSlowSuccessfulCalls
+        + numberOfFailedCalls + numberOfSlowFailedCalls;
+    if (numberOfBatchCalls <= 0) {
+      return;
+    }
+    double batchSmoothingFactor = 1.0 - Math.pow(1.0 - smoothingFactor, numberOfBatchCalls);
+    update(FAILURE_RATE, (double) (numberOfFailedCalls + numberOfSlowFailedCalls) / numberOfBatchCalls,
+        batchSmoothingFactor);
+    update(SLOW_CALL_RATE, (double) (numberOfSlowSuccessfulCalls + numberOfSlowFailedCalls) / numberOfBatchCalls,
+        batchSmoothingFactor);
+    update(DURATION_IN_NANOS, meanDurationInNanos, batchSmoothingFactor);
+    if (numberOfCalls < minimumNumberOfCalls) {
+      NUMBER_OF_CALLS.getAndAdd(this, numberOfBatchCalls);
+    }
+  }
+
+  private void record(double failure, long callDurationInNanos) {
+    update(FAILURE_RATE, failure, smoothingFactor);
+    update(SLOW_CALL_RATE, callDurationInNanos > slowCallDurationThresholdInNanos ? 1.0 : 0.0, smoothingFactor);
+    update(DURATION_IN_NANOS, callDurationInNanos, smoothingFactor);
+    if (numberOfCalls < minimumNumberOfCalls) {
+      NUMBER_OF_CALLS.getAndAdd(this, 1L);
+    }
+  }
+
+  private void update(VarHandle average, double sample, double factor) {
+    double current;
+    do {
+      current = (double) average.getVolatile(this);
+    } while (!average.compareAndSet(this, current, current + factor * (sample - current)));
+  }
+
+  @Override
+  public float calculateTransitionValue(SimpleMetrics metrics, long currentOpenStateDurationInNanos) {
+    StateTransitionParameters currentParameters = parameters;
+    long openStateDurationThreshold = currentParameters.getOpenStateDurationThreshold().toNanos();
+    if (currentOpenStateDurationInNanos > openStateDurationThreshold) {
+      return Float.POSITIVE_INFINITY;
+    }
+    boolean isWarmedUp = numberOfCalls >= minimumNumberOfCalls;
+    double currentFailureRate = isWarmedUp ? failureRate : 0.0;
+    double currentSlowCallRate = isWarmedUp ? slowCallRate : 0.0;
+    double durationHeadroom = isWarmedUp
+        ? Math.max(0.0, 1.0 - durationInNanos / slowCallDurationThresholdInNanos)
+        : 0.0;
+
+    double failureRating = (1 - currentFailureRate) * currentParameters.getFailureRateCoefficient();
+    double slowCallRating = (1 - currentSlowCallRate) * currentParameters.getSlowCallRateCoefficient();
+    double successCallRating = (1 - currentFailureRate) * durationHeadroom
+        * currentParameters.getSuccessCallRateCoefficient();
+    double timeInOpenStateRating = (double) currentOpenStateDurationInNanos / openStateDurationThreshold
+        * currentParameters.getTimeInOpenStateCoefficient();
+    return (float) (failureRating + slowCallRating + successCallRating + timeInOpenStateRating);
+  }
+
+  @Override
+  public StateTransitionParameters getParameters() {
+    return parameters;
+  }
+
+  @Override
+  public void setParameters(StateTransitionParameters parameters) {
+    this.parameters = Objects.requireNonNull(parameters, "State transition parameters must not be null");
+  }
+}
@@ -0,0 +1,79 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.core.lang.Nullable;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * Classifies the exceptions of a circuit breaker with its ignore and record exception predicates.
+ * <p>
+ * With the verdicts cached, the predicates are evaluated once per exception class, then a failure costs
+ * a single {@link ClassValue} lookup instead of walking the configured exception classes. It is only correct
+ * when the predicates depend on the exception class alone, e.g. they are built from the record-exceptions
+ * and ignore-exceptions lists. The verdicts are kept per circuit breaker, so the cache is created only when it is
+ * enabled, otherwise a classifier adds nothing to the exception classes it sees.
+ */
+final class ExceptionClassifier {
+
+  private final Predicate<Throwable> ignoreExceptionPredicate;
+  private final Predicate<Throwable> recordExceptionPredicate;
+  @Nullable
+  private final ClassValue<VerdictHolder> cachedVerdicts;
+
+  ExceptionClassifier(CircuitBreakerConfig circuitBreakerConfig, boolean isVerdictCached) {
+    this.ignoreExceptionPredicate = circuitBreakerConfig.getIgnoreExceptionPredicate();
+    this.recordExceptionPredicate = circuitBreakerConfig.getRecordExceptionPredicate();
+    this.cachedVerdicts = isVerdictCached ? new ClassValue<>() {
+      @Override
+      protected VerdictHolder computeValue(Class<?> type) {
+        return new VerdictHolder();
+      }
+    } : null;
+  }
+
+  /**
+   * @return the cause of a CompletionException or an ExecutionException, which is the one to classify,
+   * otherwise the exception itself
+   */
+  Throwable unwrap(Throwable throwable) {
+    Throwable cause = throwable.getCause();
+    return cause != null && (throwable instanceof CompletionException || throwable instanceof ExecutionException)
+        ? cause
+        : throwable;
+  }
+
+  Verdict classify(Throwable throwable) {
+    if (cachedVerdicts == null) {
+      return evaluate(throwable);
+    }
+    VerdictHolder verdictHolder = cachedVerdicts.get(throwable.getClass());
+    Verdict verdict = verdictHolder.verdict;
+    if (verdict == null) {
+      // the racing threads evaluate the same verdict, so either of them can be kept
+      verdict = evaluate(throwable);
+      verdictHolder.verdict = verdict;
+    }
+    return verdict;
+  }
+
+  private Verdict evaluate(Throwable throwable) {
+    if (ignoreExceptionPredicate.test(throwable)) {
+      return Verdict.IGNORE;
+    }
+    return recordExceptionPredicate.test(throwable) ? Verdict.RECORD : Verdict.SUCCESS;
+  }
+
+  enum Verdict {
+    IGNORE,
+    RECORD,
+    SUCCESS
+  }
+
+  private static final class VerdictHolder {
+
+    private volatile Verdict verdict;
+  }
+}
@@ -1,11 +1,17 @@
 package com.paprotskyi.twostatecircuitbreaker.engine;
 
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.BatchRecordingMetrics;
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.RollingLatencySketch;
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.StripedSlidingWindowMetrics;
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.TimeBucketSlidingWindowMetrics;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.core.lang.Nullable;
 import io.github.resilience4j.core.metrics.FixedSizeSlidingWindowMetrics;
 import io.github.resilience4j.core.metrics.Metrics;
 import io.github.resilience4j.core.metrics.Snapshot;
 
+import java.time.Clock;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 
@@ -16,33 +22,81 @@ import java.util.concurrent.atomic.LongAdder;
  */
 public class SimpleMetrics implements CircuitBreaker.Metrics {
 
-  private final FixedSizeSlidingWindowMetrics metrics;
+  private final Metrics metrics;
   private final float failureRateThreshold;
   private final float slowCallRateThreshold;
   private final long slowCallDurationThresholdInNanos;
   private final LongAdder numberOfNotPermittedCalls;
   private final int minimumNumberOfCalls;
+  private final RollingLatencySketch latencySketch;
+  private final float adaptiveSlowCallDurationMultiplier;
+  //recalculated once per interval of the latency sketch, not on every call
+  private volatile long currentSlowCallDurationThresholdInNanos;
 
   /*
-   * This class implements only the COUNT_BASED sliding window type metrics
+   * The COUNT_BASED sliding window type metrics, kept for the backward compatibility
    */
   public SimpleMetrics(int slidingWindowSize,
                        CircuitBreakerConfig circuitBreakerConfig) {
-    this.metrics = new FixedSizeSlidingWindowMetrics(slidingWindowSize);
-    this.minimumNumberOfCalls = Math
-        .min(circuitBreakerConfig.getMinimumNumberOfCalls(), slidingWindowSize);
+    this(slidingWindowSize, CircuitBreakerConfig.SlidingWindowType.COUNT_BASED, circuitBreakerConfig,
+        ThresholdCircuitBreakerConfig.ofDefaults(), Clock.systemUTC());
+  }
+
+  public SimpleMetrics(int slidingWindowSize,
+                       CircuitBreakerConfig.SlidingWindowType slidingWindowType,
+                       CircuitBreakerConfig circuitBreakerConfig,
+                       ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+                       Clock clock) {
+    if (slidingWindowType == CircuitBreakerConfig.SlidingWindowType.COUNT_BASED) {
+      this.metrics = createCountBasedWindow(slidingWindowSize,
+          thresholdCircuitBreakerConfig.getSlidingWindowImplementation());
+      this.minimumNumberOfCalls = Math
+          .min(circuitBreakerConfig.getMinimumNumberOfCalls(), slidingWindowSize);
+    } else {
+      this.metrics = new TimeBucketSlidingWindowMetrics(slidingWindowSize, clock);
+      this.minimumNumberOfCalls = circuitBreakerConfig.getMinimumNumberOfCalls();
+    }
 
     this.failureRateThreshold = circuitBreakerConfig.getFailureRateThreshold();
     this.slowCallRateThreshold = circuitBreakerConfig.getSlowCallRateThreshold();
     this.slowCallDurationThresholdInNanos = circuitBreakerConfig.getSlowCallDurationThreshold()
         .toNanos();
     this.numberOfNotPermittedCalls = new LongAdder();
+    this.latencySketch = new RollingLatencySketch(thresholdCircuitBreakerConfig.getLatencyQuantileWindow(), clock);
+    this.adaptiveSlowCallDurationMultiplier = thresholdCircuitBreakerConfig.getAdaptiveSlowCallDurationMultiplier();
+    this.currentSlowCallDurationThresholdInNanos = slowCallDurationThresholdInNanos;
   }
 
-  static SimpleMetrics forClosed(CircuitBreakerConfig circuitBreakerConfig) {
+  static SimpleMetrics forClosed(CircuitBreakerConfig circuitBreakerConfig,
+                                 ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+                                 Clock clock) {
     return new SimpleMetrics(
         circuitBreakerConfig.getSlidingWindowSize(),
-        circuitBreakerConfig);
+        circuitBreakerConfig.getSlidingWindowType(),
+        circuitBreakerConfig,
+        thresholdCircuitBreakerConfig,
+        clock);
+  }
+
+  private static Metrics createCountBasedWindow(
+      int slidingWindowSize,
+      ThresholdCircuitBreakerConfig.SlidingWindowImplementation slidingWindowImplementation) {
+    if (slidingWindowImplementation == ThresholdCircuitBreakerConfig.SlidingWindowImplementation.STRIPED) {
+      return new StripedSlidingWindowMetrics(slidingWindowSize);
+    }
+    return new FixedSizeSlidingWindowMetrics(slidingWindowSize);
+  }
+
+  /**
+   * Fills the sliding window with the calls of a persisted state. The latency sketch is not affected,
+   * as the durations are not persisted.
+   */
+  void restore(int numberOfSuccessfulCalls, int numberOfFailedCalls,
+               int numberOfSlowSuccessfulCalls, int numberOfSlowFailedCalls) {
+    record(numberOfSuccessfulCalls, 0L, Metrics.Outcome.SUCCESS);
+    record(numberOfFailedCalls, 0L, Metrics.Outcome.ERROR);
+    record(numberOfSlowSuccessfulCalls, 0L, Metrics.Outcome.SLOW_SUCCESS);
+    record(numberOfSlowFailedCalls, 0L, Metrics.Outcome.SLOW_ERROR);
   }
 
   /**
@@ -59,8 +113,12 @@ public class SimpleMetrics implements CircuitBreaker.Metrics {
    */
   public Result onSuccess(long duration, TimeUnit durationUnit) {
     Snapshot snapshot;
-    if (durationUnit.toNanos(duration) > slowCallDurationThresholdInNanos) {
+    if (recordLatency(durationUnit.toNanos(duration))) {
       snapshot = metrics.record(duration, durationUnit, Metrics.Outcome.SLOW_SUCCESS);
+    } else if (metrics instanceof StripedSlidingWindowMetrics stripedMetrics && stripedMetrics.isFull()) {
+      // a fast success in a full window cannot raise the rates, so the stripes are not merged for the check
+      stripedMetrics.recordWithoutSnapshot(duration, durationUnit, Metrics.Outcome.SUCCESS);
+      return Result.BELOW_THRESHOLDS;
     } else {
       snapshot = metrics.record(duration, durationUnit, Metrics.Outcome.SUCCESS);
     }
@@ -74,7 +132,7 @@ public class SimpleMetrics implements CircuitBreaker.Metrics {
    */
   public Result onError(long duration, TimeUnit durationUnit) {
     Snapshot snapshot;
-    if (durationUnit.toNanos(duration) > slowCallDurationThresholdInNanos) {
+    if (recordLatency(durationUnit.toNanos(duration))) {
       snapshot = metrics.record(duration, durationUnit, Metrics.Outcome.SLOW_ERROR);
     } else {
       snapshot = metrics.record(duration, durationUnit, Metrics.Outcome.ERROR);
@@ -82,6 +140,81 @@ public class SimpleMetrics implements CircuitBreaker.Metrics {
     return checkIfThresholdsExceeded(snapshot);
   }
 
+  /**
+   * Records the calls of a batch, e.g. of a pipelined request, and checks the thresholds once.
+   * The calls are classified as slow by the caller, see {@link #getSlowCallDurationThresholdInNanos()}.
+   *
+   * @param durationsInNanos the durations of the calls for the latency quantiles, null if they are unknown
+   * @return the result of the check
+   */
+  public Result onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                        int numberOfFailedCalls, int numberOfSlowFailedCalls,
+                        @Nullable long[] durationsInNanos) {
+    long totalDurationInNanos = 0;
+    if (durationsInNanos != null) {
+      for (long durationInNanos : durationsInNanos) {
+        recordLatency(durationInNanos);
+        totalDurationInNanos += durationInNanos;
+      }
+    }
+    long totalDurationInMillis = TimeUnit.NANOSECONDS.toMillis(totalDurationInNanos);
+    Snapshot snapshot;
+    if (metrics instanceof BatchRecordingMetrics batchRecordingMetrics) {
+      snapshot = batchRecordingMetrics.recordBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+          numberOfFailedCalls, numberOfSlowFailedCalls, totalDurationInMillis);
+    } else {
+      snapshot = recordBatchOneByOne(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+          numberOfFailedCalls, numberOfSlowFailedCalls, totalDurationInMillis);
+    }
+    return checkIfThresholdsExceeded(snapshot);
+  }
+
+  /**
+   * The Resilience4j window records the calls one by one, but its record() is synchronized on the window,
+   * so the lock is taken once for the whole batch and the other calls cannot interleave with it.
+   */
+  private Snapshot recordBatchOneByOne(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                                       int numberOfFailedCalls, int numberOfSlowFailedCalls,
+                                       long totalDurationInMillis) {
+    int numberOfCalls = numberOfSuccessfulCalls + numberOfSlowSuccessfulCalls
+        + numberOfFailedCalls + numberOfSlowFailedCalls;
+    long durationInMillis = numberOfCalls > 0 ? totalDurationInMillis / numberOfCalls : 0L;
+    synchronized (metrics) {
+      record(numberOfSuccessfulCalls, durationInMillis, Metrics.Outcome.SUCCESS);
+      record(numberOfSlowSuccessfulCalls, durationInMillis, Metrics.Outcome.SLOW_SUCCESS);
+      record(numberOfFailedCalls, durationInMillis, Metrics.Outcome.ERROR);
+      record(numberOfSlowFailedCalls, durationInMillis, Metrics.Outcome.SLOW_ERROR);
+      return metrics.getSnapshot();
+    }
+  }
+
+  private void record(int numberOfCalls, long durationInMillis, Metrics.Outcome outcome) {
+    for (int i = 0; i < numberOfCalls; i++) {
+      metrics.record(durationInMillis, TimeUnit.MILLISECONDS, outcome);
+    }
+  }
+
+  /**
+   * Records the latency into the sketch, without any allocation.
+   *
+   * @return true if the call is slow
+   */
+  private boolean recordLatency(long durationInNanos) {
+    if (latencySketch.record(durationInNanos) && adaptiveSlowCallDurationMultiplier > 0) {
+      updateAdaptiveSlowCallDurationThreshold();
+    }
+    return durationInNanos > currentSlowCallDurationThresholdInNanos;
+  }
+
+  private void updateAdaptiveSlowCallDurationThreshold() {
+    if (latencySketch.getNumberOfCalls() < minimumNumberOfCalls) {
+      currentSlowCallDurationThresholdInNanos = slowCallDurationThresholdInNanos;
+      return;
+    }
+    long p99InNanos = latencySketch.getQuantileInNanos(0.99);
+    currentSlowCallDurationThresholdInNanos = Math.max(1, (long) (p99InNanos * adaptiveSlowCallDurationMultiplier));
+  }
+
   /**
    * Checks if the failure rate is above the threshold or if the slow calls percentage is above
    * the threshold.
@@ -150,13 +283,23 @@ public class SimpleMetrics implements CircuitBreaker.Metrics {
     return targetRateDecimal;
   }
 
+  /**
+   * Takes a single snapshot of the sliding window, which can be used to calculate several rates consistently.
+   */
+  Snapshot getSnapshot() {
+    return metrics.getSnapshot();
+  }
+
   /**
    * NOTE: This method returns 0.0f in case the total number of measured calls
    * is less than minimumNumberOrCalls. This can be used in the probability formula.
    * This works not in the same way as an original implementation.
    */
   public float getDecimalFailureRate() {
-    Snapshot snapshot = metrics.getSnapshot();
+    return getDecimalFailureRate(metrics.getSnapshot());
+  }
+
+  float getDecimalFailureRate(Snapshot snapshot) {
     return getTargetCallNumberRate(snapshot, snapshot.getNumberOfFailedCalls());
   }
 
@@ -167,16 +310,18 @@ public class SimpleMetrics implements CircuitBreaker.Metrics {
    */
   //TODO this can be also considered as two parts in probabilities: successful and failed slow calls
   public float getDecimalSlowCallRate() {
-    Snapshot snapshot = metrics.getSnapshot();
-    return getTargetCallNumberRate(snapshot, snapshot.getTotalNumberOfSlowCalls());
+    return getDecimalSlowCallRate(metrics.getSnapshot());
   }
 
+  float getDecimalSlowCallRate(Snapshot snapshot) {
+    return getTargetCallNumberRate(snapshot, snapshot.getTotalNumberOfSlowCalls());
+  }
 
   public float getDecimalSuccessRate() {
-    Snapshot snapshot = metrics.getSnapshot();
-    if (checkNotExceedsMinimumNumberOfCalls(snapshot)) {
-      return 0.0f;
-    }
+    return getDecimalSuccessRate(metrics.getSnapshot());
+  }
+
+  float getDecimalSuccessRate(Snapshot snapshot) {
     return getTargetCallNumberRate(snapshot, snapshot.getNumberOfSuccessfulCalls());
   }
 
@@ -225,6 +370,36 @@ public class SimpleMetrics implements CircuitBreaker.Metrics {
   }
 
 
+  /**
+   * The latency quantile of the calls recorded during the latency quantile window,
+   * it is within about 6% of the real value.
+   *
+   * @param quantile from 0 to 1, e.g. 0.99
+   * @return the latency in nanos, or 0 if no calls were recorded during the window
+   */
+  public long getLatencyQuantileInNanos(double quantile) {
+    return latencySketch.getQuantileInNanos(quantile);
+  }
+
+  public long getP50LatencyInNanos() {
+    return getLatencyQuantileInNanos(0.5);
+  }
+
+  public long getP95LatencyInNanos() {
+    return getLatencyQuantileInNanos(0.95);
+  }
+
+  public long getP99LatencyInNanos() {
+    return getLatencyQuantileInNanos(0.99);
+  }
+
+  /**
+   * @return the current slow call threshold, either the fixed or the adaptive one
+   */
+  public long getSlowCallDurationThresholdInNanos() {
+    return currentSlowCallDurationThresholdInNanos;
+  }
+
   /**
    * {@inheritDoc}
    *
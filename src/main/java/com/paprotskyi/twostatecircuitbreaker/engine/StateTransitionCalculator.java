@@ -1,35 +1,88 @@
 package com.paprotskyi.twostatecircuitbreaker.engine;
 
+import io.github.resilience4j.core.metrics.Snapshot;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Objects;
+
+/**
+ * The default {@link TransitionPolicy}: the weighted sum of the failure, slow call and success rates
+ * of the sliding window and of the time spent in the OPEN state.
+ */
 @Slf4j
-public class StateTransitionCalculator {
+public class StateTransitionCalculator implements TransitionPolicy {
+
+  //the parameters are replaced as a whole, so a calculation never mixes the old and the new coefficients
+  private volatile StateTransitionParameters parameters;
+
+  public StateTransitionCalculator() {
+    this(StateTransitionParameters.ofDefaults());
+  }
+
+  public StateTransitionCalculator(StateTransitionParameters parameters) {
+    this.parameters = Objects.requireNonNull(parameters, "State transition parameters must not be null");
+  }
+
+  @Override
+  public void onSuccess(long durationInNanos) {
+    //noOp: the rates are taken from the sliding window
+  }
+
+  @Override
+  public void onError(long durationInNanos) {
+    //noOp: the rates are taken from the sliding window
+  }
 
-  private static final long DEFAULT_OPEN_STATE_DURATION_THRESHOLD = 10_000_000_000L;
+  @Override
+  public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                      int numberOfFailedCalls, int numberOfSlowFailedCalls, long meanDurationInNanos) {
+    //noOp: the rates are taken from the sliding window
+  }
 
-  //For the study process, these coefficients are stated as constant values,
-  // because each test requires full application reload
-  //In order to use them in production purposes, please, extract them to the application properties
-  private static final float SLOW_CALL_RATE_COEFFICIENT = 0.15f;
-  private static final float FAILURE_RATE_COEFFICIENT = 0.4f;
-  private static final float SUCCESS_CALL_RATE_COEFFICIENT = 0.35f;
-  private static final float TIME_IN_OPEN_STATE_COEFFICIENT = 0.1f;
+  @Override
+  public StateTransitionParameters getParameters() {
+    return parameters;
+  }
+
+  @Override
+  public void setParameters(StateTransitionParameters parameters) {
+    this.parameters = Objects.requireNonNull(parameters, "State transition parameters must not be null");
+  }
 
+  @Override
   public float calculateTransitionValue(@NonNull SimpleMetrics metrics,
                                         long currentOpenStateDurationInNanos) {
+    //the sliding window is not read at all, when the open state has lasted too long
+    if (currentOpenStateDurationInNanos > parameters.getOpenStateDurationThreshold().toNanos()) {
+      return Float.POSITIVE_INFINITY;
+    }
+    //all the rates are taken from the same snapshot, so they are consistent and cost a single window read
+    Snapshot snapshot = metrics.getSnapshot();
+    return calculateTransitionValue(metrics.getDecimalFailureRate(snapshot), metrics.getDecimalSlowCallRate(snapshot),
+        metrics.getDecimalSuccessRate(snapshot), currentOpenStateDurationInNanos);
+  }
+
+  /**
+   * The same rating for the decimal rates, which are kept outside of the {@link SimpleMetrics},
+   * e.g. by the {@link ThresholdCircuitBreakerGroup}. The rates are 0 below the minimum number of calls.
+   */
+  public float calculateTransitionValue(float decimalFailureRate, float decimalSlowCallRate,
+                                        float decimalSuccessRate, long currentOpenStateDurationInNanos) {
+    StateTransitionParameters currentParameters = parameters;
+    long openStateDurationThreshold = currentParameters.getOpenStateDurationThreshold().toNanos();
     //always close the circuit breaker when the time in open state is longer than the given threshold
-    if (currentOpenStateDurationInNanos > DEFAULT_OPEN_STATE_DURATION_THRESHOLD) {
+    if (currentOpenStateDurationInNanos > openStateDurationThreshold) {
       return Float.POSITIVE_INFINITY;
     }
 
-    float decimalFailureRating = (1 - metrics.getDecimalFailureRate()) * FAILURE_RATE_COEFFICIENT;
-    float decimalSlowCallRating = (1 - metrics.getDecimalSlowCallRate()) * SLOW_CALL_RATE_COEFFICIENT;
-    float decimalSuccessCallRating = metrics.getDecimalSuccessRate() * SUCCESS_CALL_RATE_COEFFICIENT;
+    float decimalFailureRating = (1 - decimalFailureRate) * currentParameters.getFailureRateCoefficient();
+    float decimalSlowCallRating = (1 - decimalSlowCallRate) * currentParameters.getSlowCallRateCoefficient();
+    float decimalSuccessCallRating = decimalSuccessRate * currentParameters.getSuccessCallRateCoefficient();
 
     //time in open state
-    float timeInOpenStateRating = (float)
-        currentOpenStateDurationInNanos / DEFAULT_OPEN_STATE_DURATION_THRESHOLD * TIME_IN_OPEN_STATE_COEFFICIENT;
+    float timeInOpenStateRating = (float) currentOpenStateDurationInNanos / openStateDurationThreshold
+        * currentParameters.getTimeInOpenStateCoefficient();
 
     return decimalFailureRating + decimalSlowCallRating + decimalSuccessCallRating + timeInOpenStateRating;
   }
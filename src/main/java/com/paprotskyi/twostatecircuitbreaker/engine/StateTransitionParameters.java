@@ -0,0 +1,72 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The parameters of the OPEN to CLOSED transition rating, which is calculated by the {@link StateTransitionCalculator}.
+ * The object is immutable, so a breaker can switch to the new parameters at any moment with a single write,
+ * see {@link ThresholdCircuitBreaker#updateStateTransitionParameters(StateTransitionParameters)}.
+ * The parameters are validated when they are built, so a breaker never gets a rating, which cannot be reached.
+ */
+@Value
+@Builder(toBuilder = true)
+public class StateTransitionParameters {
+
+  @Builder.Default
+  float slowCallRateCoefficient = 0.15f;
+
+  @Builder.Default
+  float failureRateCoefficient = 0.4f;
+
+  @Builder.Default
+  float successCallRateCoefficient = 0.35f;
+
+  @Builder.Default
+  float timeInOpenStateCoefficient = 0.1f;
+
+  /**
+   * The breaker is always closed when it has been OPEN for longer than this.
+   */
+  @Builder.Default
+  Duration openStateDurationThreshold = Duration.ofSeconds(10);
+
+  /**
+   * The breaker is closed when the transition rating reaches this value.
+   */
+  @Builder.Default
+  float transitionRatingThreshold = 0.4f;
+
+  private StateTransitionParameters(float slowCallRateCoefficient, float failureRateCoefficient,
+                                    float successCallRateCoefficient, float timeInOpenStateCoefficient,
+                                    Duration openStateDurationThreshold, float transitionRatingThreshold) {
+    this.slowCallRateCoefficient = requireCoefficient(slowCallRateCoefficient, "slowCallRateCoefficient");
+    this.failureRateCoefficient = requireCoefficient(failureRateCoefficient, "failureRateCoefficient");
+    this.successCallRateCoefficient = requireCoefficient(successCallRateCoefficient, "successCallRateCoefficient");
+    this.timeInOpenStateCoefficient = requireCoefficient(timeInOpenStateCoefficient, "timeInOpenStateCoefficient");
+    //the time in the OPEN state is divided by the duration threshold
+    Objects.requireNonNull(openStateDurationThreshold, "The openStateDurationThreshold must not be null");
+    if (openStateDurationThreshold.isNegative() || openStateDurationThreshold.isZero()) {
+      throw new IllegalArgumentException("The openStateDurationThreshold must be positive");
+    }
+    this.openStateDurationThreshold = openStateDurationThreshold;
+    if (!Float.isFinite(transitionRatingThreshold)) {
+      throw new IllegalArgumentException("The transitionRatingThreshold must be finite");
+    }
+    this.transitionRatingThreshold = transitionRatingThreshold;
+  }
+
+  public static StateTransitionParameters ofDefaults() {
+    return StateTransitionParameters.builder().build();
+  }
+
+  private static float requireCoefficient(float coefficient, String name) {
+    if (!Float.isFinite(coefficient) || coefficient < 0) {
+      throw new IllegalArgumentException("The " + name + " must be a finite number, not less than 0");
+    }
+    return coefficient;
+  }
+}
@@ -1,12 +1,26 @@
 package com.paprotskyi.twostatecircuitbreaker.engine;
 
+import com.paprotskyi.twostatecircuitbreaker.engine.event.ThresholdCircuitBreakerEventPublisher;
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.PackedCallCounters;
+import com.paprotskyi.twostatecircuitbreaker.engine.persistence.PersistedCircuitBreakerState;
+import com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedCircuitBreakerState;
+import com.paprotskyi.twostatecircuitbreaker.engine.timeout.HashedWheelTimer;
 import com.paprotskyi.twostatecircuitbreaker.exception.IncorrectStateLogicException;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.ResultRecordedAsFailureException;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnCallNotPermittedEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnErrorEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnFailureRateExceededEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnIgnoredErrorEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnResetEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnSlowCallRateExceededEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnSuccessEvent;
 import io.github.resilience4j.core.functions.Either;
 import io.github.resilience4j.core.lang.Nullable;
+import io.github.resilience4j.core.metrics.Snapshot;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Clock;
@@ -15,12 +29,16 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 import static io.github.resilience4j.circuitbreaker.CircuitBreaker.State.OPEN;
@@ -28,27 +46,102 @@ import static io.github.resilience4j.circuitbreaker.CircuitBreaker.State.OPEN;
 @Slf4j
 public class ThresholdCircuitBreaker implements CircuitBreaker {
 
+  // the share of the calls admitted at the start of a ramp-up, so there are calls to judge the recovery by
+  private static final float MIN_RAMP_UP_ADMISSION_PROBABILITY = 0.05f;
+  // a rating evaluated in the background is used for this many evaluation intervals
+  private static final int TRANSITION_EVALUATION_VALIDITY_INTERVALS = 3;
+  private static final long NOT_PINNED = Long.MIN_VALUE;
+
   private final String name;
   private final AtomicReference<SimpleState> stateReference;
   private final CircuitBreakerConfig circuitBreakerConfig;
-  private final StateTransitionCalculator stateTransitionCalculator;
+  private final ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig;
+  private final TransitionPolicy transitionPolicy;
   private final Clock clock;
   private final Function<Clock, Long> currentTimestampFunction;
   private final Map<String, String> tags;
   private final TimeUnit timestampUnit;
+  private final ThresholdCircuitBreakerEventPublisher eventPublisher;
+  private final ExceptionClassifier exceptionClassifier;
+  @Nullable
+  private final SharedCircuitBreakerState sharedState;
+  // the window of the counters packed into a long: the shared ones and the ones of a ramp-up
+  private final int packedSlidingWindowSize;
+  // the shared and the ramp-up counters are halved at twice their window, so they never reach a larger minimum
+  private final int packedMinimumNumberOfCalls;
+  private final float callTimeoutMultiplier;
+  // in the timestamp unit, 0 if the OPEN state is closed at once
+  private final long rampUpDuration;
+  // in the timestamp unit, 0 if the rating is not evaluated in the background
+  private final long transitionEvaluationValidity;
 
   public ThresholdCircuitBreaker(String name,
                                  Clock clock,
                                  CircuitBreakerConfig circuitBreakerConfig) {
+    this(name, clock, circuitBreakerConfig, ThresholdCircuitBreakerConfig.ofDefaults());
+  }
+
+  public ThresholdCircuitBreaker(String name,
+                                 Clock clock,
+                                 CircuitBreakerConfig circuitBreakerConfig,
+                                 ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig) {
+    this(name, clock, circuitBreakerConfig, thresholdCircuitBreakerConfig, null);
+  }
+
+  /**
+   * A circuit breaker, which shares its state with the circuit breakers of the same name in the other JVMs.
+   * They are opened together, when either the calls of this JVM or the calls of all of them exceed the thresholds,
+   * and closed together, when one of them decides to close.
+   *
+   * @param sharedState the slot of a {@link com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedStateRegion},
+   *                    null if the state is not shared
+   */
+  public ThresholdCircuitBreaker(String name,
+                                 Clock clock,
+                                 CircuitBreakerConfig circuitBreakerConfig,
+                                 ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+                                 @Nullable SharedCircuitBreakerState sharedState) {
+    this(name, clock, circuitBreakerConfig, thresholdCircuitBreakerConfig, sharedState, Duration.ZERO);
+  }
+
+  /**
+   * @param transitionEvaluationInterval how often the registry evaluates the OPEN state in the background,
+   *                                     see {@link #evaluateTransition()}, zero if it does not
+   */
+  ThresholdCircuitBreaker(String name,
+                          Clock clock,
+                          CircuitBreakerConfig circuitBreakerConfig,
+                          ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+                          @Nullable SharedCircuitBreakerState sharedState,
+                          Duration transitionEvaluationInterval) {
     this.name = name;
     this.circuitBreakerConfig = Objects
         .requireNonNull(circuitBreakerConfig, "Config must not be null");
+    this.thresholdCircuitBreakerConfig = Objects
+        .requireNonNull(thresholdCircuitBreakerConfig, "Threshold config must not be null");
     this.clock = clock;
     this.currentTimestampFunction = circuitBreakerConfig.getCurrentTimestampFunction();
+    this.sharedState = sharedState;
+    this.packedSlidingWindowSize = Math.min(circuitBreakerConfig.getSlidingWindowSize(),
+        PackedCallCounters.MAX_SLIDING_WINDOW_SIZE);
+    this.packedMinimumNumberOfCalls = Math.min(circuitBreakerConfig.getMinimumNumberOfCalls(),
+        packedSlidingWindowSize);
+    this.callTimeoutMultiplier = thresholdCircuitBreakerConfig.getCallTimeoutMultiplier();
+    this.rampUpDuration = circuitBreakerConfig.getTimestampUnit()
+        .convert(thresholdCircuitBreakerConfig.getRampUpDuration());
+    this.transitionEvaluationValidity = circuitBreakerConfig.getTimestampUnit()
+        .convert(transitionEvaluationInterval.multipliedBy(TRANSITION_EVALUATION_VALIDITY_INTERVALS));
+    if (callTimeoutMultiplier != 0 && !(callTimeoutMultiplier >= 1)) {
+      throw new IllegalArgumentException("The call timeout multiplier must be 0 or at least 1");
+    }
     this.stateReference = new AtomicReference<>(new ClosedState());
     this.timestampUnit = circuitBreakerConfig.getTimestampUnit();
     this.tags = Collections.emptyMap();
-    this.stateTransitionCalculator = new StateTransitionCalculator();
+    this.transitionPolicy = thresholdCircuitBreakerConfig.getTransitionPolicy()
+        .create(circuitBreakerConfig, thresholdCircuitBreakerConfig.getStateTransitionParameters());
+    this.eventPublisher = new ThresholdCircuitBreakerEventPublisher(thresholdCircuitBreakerConfig.getEventBufferSize());
+    this.exceptionClassifier = new ExceptionClassifier(circuitBreakerConfig,
+        thresholdCircuitBreakerConfig.isExceptionVerdictCached());
   }
 
   public ThresholdCircuitBreaker(String name) {
@@ -58,7 +151,9 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
   @Override
   public boolean tryAcquirePermission() {
     boolean callPermitted = stateReference.get().tryAcquirePermission();
-    log.info("CircuitBreaker call is {}permitted, state: {}", callPermitted ? "" : "not ", getState());
+    if (log.isDebugEnabled()) {
+      log.debug("CircuitBreaker call is {}permitted, state: {}", callPermitted ? "" : "not ", getState());
+    }
     return callPermitted;
   }
 
@@ -74,27 +169,150 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
 
   @Override
   public void onError(long duration, TimeUnit durationUnit, Throwable throwable) {
+    if (isDisabled()) {
+      return;
+    }
     // Handle the case if the completable future throws a CompletionException wrapping the original exception
     // where original exception is the one to retry not the CompletionException.
-    if (throwable instanceof CompletionException || throwable instanceof ExecutionException) {
-      Throwable cause = throwable.getCause();
-      handleThrowable(duration, durationUnit, cause);
-    } else {
-      handleThrowable(duration, durationUnit, throwable);
-    }
+    handleThrowable(duration, durationUnit, exceptionClassifier.unwrap(throwable));
   }
 
   @Override
   public void onSuccess(long duration, TimeUnit durationUnit) {
-    log.info("ThresholdCircuitBreaker '{}' succeeded:", name);
+    if (isDisabled()) {
+      return;
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("ThresholdCircuitBreaker '{}' succeeded", name);
+    }
+    publishSuccessEvent(duration, durationUnit);
+    transitionPolicy.onSuccess(durationUnit.toNanos(duration));
     stateReference.get().onSuccess(duration, durationUnit);
   }
 
+  /**
+   * In the timeout mode, see {@link ThresholdCircuitBreakerConfig#getCallTimeoutMultiplier()}, the returned stage
+   * is completed with a TimeoutException once the call lasts too long, and the call is recorded as a slow error
+   * right away, so the callers do not wait for a dead dependency. The late outcome of the call is ignored.
+   * The timeouts are tracked by the shared {@link HashedWheelTimer}, there is no scheduled task per call.
+   */
+  @Override
+  public <T> CompletionStage<T> executeCompletionStage(Supplier<CompletionStage<T>> supplier) {
+    if (callTimeoutMultiplier == 0 || isDisabled()) {
+      return CircuitBreaker.super.executeCompletionStage(supplier);
+    }
+    CompletableFuture<T> promise = new CompletableFuture<>();
+    if (!tryAcquirePermission()) {
+      promise.completeExceptionally(CallNotPermittedException.createCallNotPermittedException(this));
+      return promise;
+    }
+    long start = getCurrentTimestamp();
+    long timeoutInNanos = (long) (getMetrics().getSlowCallDurationThresholdInNanos() * callTimeoutMultiplier);
+    // the outcome is recorded by the one, which has won the timeout: either the timer or the call
+    HashedWheelTimer.Timeout timeout = HashedWheelTimer.getSharedInstance()
+        .newTimeout(() -> onTimeout(promise, getCurrentTimestamp() - start, timeoutInNanos), timeoutInNanos);
+    try {
+      supplier.get().whenComplete((result, throwable) -> {
+        if (!timeout.cancel()) {
+          return;
+        }
+        long duration = getCurrentTimestamp() - start;
+        if (throwable != null) {
+          onError(duration, timestampUnit, throwable);
+          promise.completeExceptionally(throwable);
+        } else {
+          onResult(duration, timestampUnit, result);
+          promise.complete(result);
+        }
+      });
+    } catch (Exception exception) {
+      if (timeout.cancel()) {
+        onError(getCurrentTimestamp() - start, timestampUnit, exception);
+        promise.completeExceptionally(exception);
+      }
+    }
+    return promise;
+  }
+
+  /**
+   * The timed out call is recorded as a slow error, whatever the recorded exceptions are.
+   */
+  private void onTimeout(CompletableFuture<?> promise, long duration, long timeoutInNanos) {
+    TimeoutException timeoutException = new TimeoutException(
+        "ThresholdCircuitBreaker '" + name + "' has timed out a call after " + timeoutInNanos + " ns");
+    if (log.isDebugEnabled()) {
+      log.debug("CircuitBreaker '{}' has timed out a call after {} ns", name, timeoutInNanos);
+    }
+    publishErrorEvent(duration, timestampUnit, timeoutException);
+    transitionPolicy.onError(timestampUnit.toNanos(duration));
+    stateReference.get().onError(duration, timestampUnit, timeoutException);
+    promise.completeExceptionally(timeoutException);
+  }
+
+  /**
+   * Records the outcomes of a batch of calls, e.g. the results of a pipelined request, which arrive at once.
+   * The sliding window is updated in one step and the thresholds are checked once for the whole batch.
+   * The calls are classified by the caller, the slow ones are slower than
+   * {@link SimpleMetrics#getSlowCallDurationThresholdInNanos()}, and no per-call events are published.
+   *
+   * @param durationsInNanos the durations of all the calls of the batch, in any order, null if they are unknown
+   */
+  public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                      int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+    if (numberOfSuccessfulCalls < 0 || numberOfSlowSuccessfulCalls < 0
+        || numberOfFailedCalls < 0 || numberOfSlowFailedCalls < 0) {
+      throw new IllegalArgumentException("The number of calls in a batch must not be negative");
+    }
+    if (numberOfSuccessfulCalls + numberOfSlowSuccessfulCalls + numberOfFailedCalls + numberOfSlowFailedCalls == 0
+        || isDisabled()) {
+      return;
+    }
+    log.debug("ThresholdCircuitBreaker '{}' recorded a batch: {} successful, {} slow successful, {} failed, "
+            + "{} slow failed calls", name, numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+        numberOfFailedCalls, numberOfSlowFailedCalls);
+    SimpleState state = stateReference.get();
+    notifyTransitionPolicy(state.getMetrics(), numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+        numberOfFailedCalls, numberOfSlowFailedCalls, durationsInNanos);
+    state.onBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+        numberOfFailedCalls, numberOfSlowFailedCalls, durationsInNanos);
+  }
+
+  /**
+   * The policy is told about the whole batch at once. Without the durations, the fast calls are taken as instant
+   * and the slow ones as taking the slow call duration threshold.
+   */
+  private void notifyTransitionPolicy(SimpleMetrics metrics, int numberOfSuccessfulCalls,
+                                      int numberOfSlowSuccessfulCalls, int numberOfFailedCalls,
+                                      int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+    long meanDurationInNanos;
+    if (durationsInNanos != null && durationsInNanos.length > 0) {
+      long totalDurationInNanos = 0L;
+      for (long durationInNanos : durationsInNanos) {
+        totalDurationInNanos += durationInNanos;
+      }
+      meanDurationInNanos = totalDurationInNanos / durationsInNanos.length;
+    } else {
+      long numberOfSlowCalls = (long) numberOfSlowSuccessfulCalls + numberOfSlowFailedCalls;
+      long numberOfCalls = numberOfSlowCalls + numberOfSuccessfulCalls + numberOfFailedCalls;
+      meanDurationInNanos = Math.round((double) metrics.getSlowCallDurationThresholdInNanos()
+          * numberOfSlowCalls / numberOfCalls);
+    }
+    transitionPolicy.onBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+        numberOfFailedCalls, numberOfSlowFailedCalls, meanDurationInNanos);
+  }
+
   @Override
   public void onResult(long duration, TimeUnit durationUnit, @Nullable Object result) {
+    if (isDisabled()) {
+      return;
+    }
     if (result != null && circuitBreakerConfig.getRecordResultPredicate().test(result)) {
-      log.info("ThresholdCircuitBreaker '{}' recorded a result type '{}' as failure:", name, result.getClass());
+      if (log.isDebugEnabled()) {
+        log.debug("ThresholdCircuitBreaker '{}' recorded a result type '{}' as failure", name, result.getClass());
+      }
       ResultRecordedAsFailureException failure = new ResultRecordedAsFailureException(name, result);
+      publishErrorEvent(duration, durationUnit, failure);
+      transitionPolicy.onError(durationUnit.toNanos(duration));
       stateReference.get().onError(duration, durationUnit, failure);
     } else {
       onSuccess(duration, durationUnit);
@@ -104,17 +322,36 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
     }
   }
 
+  /**
+   * The outcomes are dropped at once in the DISABLED state, so they cost neither the events nor the policy updates.
+   */
+  private boolean isDisabled() {
+    return stateReference.get() instanceof DisabledState;
+  }
+
   private void handleThrowable(long duration, TimeUnit durationUnit, Throwable throwable) {
-    if (circuitBreakerConfig.getIgnoreExceptionPredicate().test(throwable)) {
-      log.info("CircuitBreaker '{}' ignored an exception:", name, throwable);
+    ExceptionClassifier.Verdict verdict = exceptionClassifier.classify(throwable);
+    if (verdict == ExceptionClassifier.Verdict.IGNORE) {
+      if (log.isDebugEnabled()) {
+        log.debug("CircuitBreaker '{}' ignored an exception:", name, throwable);
+      }
       releasePermission();
+      publishIgnoredErrorEvent(duration, durationUnit, throwable);
       return;
     }
-    if (circuitBreakerConfig.getRecordExceptionPredicate().test(throwable)) {
-      log.info("CircuitBreaker '{}' recorded an exception as failure:", name, throwable);
+    if (verdict == ExceptionClassifier.Verdict.RECORD) {
+      if (log.isDebugEnabled()) {
+        log.debug("CircuitBreaker '{}' recorded an exception as failure:", name, throwable);
+      }
+      publishErrorEvent(duration, durationUnit, throwable);
+      transitionPolicy.onError(durationUnit.toNanos(duration));
       stateReference.get().onError(duration, durationUnit, throwable);
     } else {
-      log.info("CircuitBreaker '{}' recorded an exception as success:", name, throwable);
+      if (log.isDebugEnabled()) {
+        log.debug("CircuitBreaker '{}' recorded an exception as success:", name, throwable);
+      }
+      publishSuccessEvent(duration, durationUnit);
+      transitionPolicy.onSuccess(durationUnit.toNanos(duration));
       stateReference.get().onSuccess(duration, durationUnit);
     }
     handlePossibleTransition(Either.right(throwable));
@@ -129,27 +366,53 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
   @Override
   public void reset() {
     log.error("CircuitBreaker {} State reset to CLOSED state", getName());
-    stateReference.getAndUpdate(currentState -> new ClosedState());
+    ClosedState closedState = new ClosedState();
+    closedState.onEntered(stateReference.getAndSet(closedState));
+    if (eventPublisher.hasConsumers()) {
+      eventPublisher.publishEvent(new CircuitBreakerOnResetEvent(name));
+    }
   }
 
   @Override
   public void transitionToClosedState() {
-    stateTransition(State.CLOSED, currentState -> new ClosedState(currentState.getMetrics()));
+    manualTransition(State.CLOSED, currentState -> new ClosedState(currentState.getMetrics()));
   }
 
   @Override
   public void transitionToOpenState() {
-    stateTransition(OPEN, currentState -> new OpenState(currentState.getMetrics()));
+    manualTransition(OPEN, currentState -> new OpenState(currentState.getMetrics()));
   }
 
+  /**
+   * Pins the circuit breaker OPEN, e.g. for a maintenance window: the calls are rejected until the wait duration
+   * has passed, whatever the rating and the shared state are, then the OPEN state is evaluated as usual.
+   * The wait duration is counted as the time spent in the OPEN state. A negative one is the same as zero, i.e.
+   * the OPEN state is not pinned at all.
+   */
   @Override
   public void transitionToOpenStateFor(Duration waitDuration) {
-    //currently, won't be used
+    long currentTimestamp = getCurrentTimestamp();
+    long waitTimestampDuration = Math.max(0L, timestampUnit.convert(waitDuration));
+    // a very long wait duration pins the state for good instead of overflowing
+    transitionToPinnedOpenState(waitTimestampDuration > Long.MAX_VALUE - currentTimestamp
+        ? Long.MAX_VALUE
+        : currentTimestamp + waitTimestampDuration);
   }
 
+  /**
+   * The same as {@link #transitionToOpenStateFor(Duration)} until the given wall clock instant, which may have
+   * passed already.
+   */
   @Override
   public void transitionToOpenStateUntil(Instant waitUntil) {
-    //currently, won't be used
+    transitionToOpenStateFor(Duration.between(clock.instant(), waitUntil));
+  }
+
+  private void transitionToPinnedOpenState(long pinnedUntilTimestamp) {
+    log.info("CircuitBreaker {} is pinned OPEN for {} {}", name,
+        Math.max(0L, pinnedUntilTimestamp - getCurrentTimestamp()), timestampUnit);
+    manualTransition(OPEN,
+        currentState -> new OpenState(currentState.getMetrics(), getCurrentTimestamp(), pinnedUntilTimestamp));
   }
 
   @Override
@@ -158,31 +421,104 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
         "Transition to half-open state must not be initiated in ThresholdCircuitBreaker");
   }
 
+  /**
+   * Bypasses the circuit breaker: every call is permitted and nothing is recorded, until another transition.
+   */
   @Override
   public void transitionToDisabledState() {
-    throw new IncorrectStateLogicException(
-        "Transition to disabled state must not be initiated in ThresholdCircuitBreaker");
+    manualTransition(State.DISABLED, currentState -> new DisabledState(currentState.getMetrics()));
   }
 
+  /**
+   * The calls are permitted and recorded, but the circuit breaker is never opened, until another transition.
+   */
   @Override
   public void transitionToMetricsOnlyState() {
-    throw new IncorrectStateLogicException(
-        "Transition to metrics only state must not be initiated in ThresholdCircuitBreaker");
+    manualTransition(State.METRICS_ONLY, currentState -> new MetricsOnlyState(currentState.getMetrics()));
   }
 
+  /**
+   * Rejects every call, until another transition.
+   */
   @Override
   public void transitionToForcedOpenState() {
-    throw new IncorrectStateLogicException(
-        "Transition to forced open state must not be initiated in ThresholdCircuitBreaker");
+    manualTransition(State.FORCED_OPEN, currentState -> new ForcedOpenState(currentState.getMetrics()));
+  }
+
+  /**
+   * A transition requested from the outside, which is validated and retried until it wins against the others.
+   */
+  private void manualTransition(State newState, UnaryOperator<SimpleState> newStateGenerator) {
+    SimpleState currentState;
+    do {
+      currentState = stateReference.get();
+      StateTransition.transitionBetween(name, currentState.getState(), newState);
+    } while (!tryTransition(currentState, newStateGenerator.apply(currentState)));
+  }
+
+  /**
+   * Every transition installs a new state object with a CAS from the state seen by the caller,
+   * so the state reference works as a versioned state word: a thread, which has seen an older state, cannot win,
+   * and there is no ABA. Only the winner runs the side effects, the other threads go on with the current state
+   * without a lock or a retry.
+   *
+   * @return true if this thread has made the transition
+   */
+  private boolean tryTransition(SimpleState expectedState, SimpleState newState) {
+    if (!stateReference.compareAndSet(expectedState, newState)) {
+      return false;
+    }
+    onTransition(expectedState, newState);
+    return true;
+  }
+
+  private void onTransition(SimpleState previousState, SimpleState newState) {
+    log.info("CircuitBreaker {} transition to {} state", name, newState.getState().name());
+    newState.onEntered(previousState);
+    if (eventPublisher.hasConsumers()) {
+      eventPublisher.publishEvent(new CircuitBreakerOnStateTransitionEvent(name,
+          StateTransition.transitionBetween(name, previousState.getState(), newState.getState())));
+    }
+  }
+
+  // the events are created only when somebody has subscribed, so the calls allocate nothing otherwise
+  private void publishSuccessEvent(long duration, TimeUnit durationUnit) {
+    if (eventPublisher.hasConsumers()) {
+      eventPublisher.publishEvent(
+          new CircuitBreakerOnSuccessEvent(name, Duration.of(duration, durationUnit.toChronoUnit())));
+    }
+  }
+
+  private void publishErrorEvent(long duration, TimeUnit durationUnit, Throwable throwable) {
+    if (eventPublisher.hasConsumers()) {
+      eventPublisher.publishEvent(
+          new CircuitBreakerOnErrorEvent(name, Duration.of(duration, durationUnit.toChronoUnit()), throwable));
+    }
+  }
+
+  private void publishIgnoredErrorEvent(long duration, TimeUnit durationUnit, Throwable throwable) {
+    if (eventPublisher.hasConsumers()) {
+      eventPublisher.publishEvent(
+          new CircuitBreakerOnIgnoredErrorEvent(name, Duration.of(duration, durationUnit.toChronoUnit()), throwable));
+    }
   }
 
-  private void stateTransition(State newState,
-                               UnaryOperator<SimpleState> newStateGenerator) {
-    log.info("CircuitBreaker {} transition to {} state", getName(), newState.name());
-    stateReference.getAndUpdate(currentState -> {
-      StateTransition.transitionBetween(getName(), currentState.getState(), newState);
-      return newStateGenerator.apply(currentState);
-    });
+  private void publishCallNotPermittedEvent() {
+    if (eventPublisher.hasConsumers()) {
+      eventPublisher.publishEvent(new CircuitBreakerOnCallNotPermittedEvent(name));
+    }
+  }
+
+  private void publishThresholdsExceededEvents(SimpleMetrics.Result result, SimpleMetrics metrics) {
+    if (!eventPublisher.hasConsumers()) {
+      return;
+    }
+    if (SimpleMetrics.Result.hasFailureRateExceededThreshold(result)) {
+      eventPublisher.publishEvent(new CircuitBreakerOnFailureRateExceededEvent(name, metrics.getFailureRate()));
+    }
+    if (SimpleMetrics.Result.hasSlowCallRateExceededThreshold(result)) {
+      eventPublisher.publishEvent(new CircuitBreakerOnSlowCallRateExceededEvent(name, metrics.getSlowCallRate()));
+    }
   }
 
   @Override
@@ -200,19 +536,136 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
     return circuitBreakerConfig;
   }
 
+  public ThresholdCircuitBreakerConfig getThresholdCircuitBreakerConfig() {
+    return thresholdCircuitBreakerConfig;
+  }
+
   @Override
-  public Metrics getMetrics() {
+  public SimpleMetrics getMetrics() {
     return stateReference.get().getMetrics();
   }
 
+  public StateTransitionParameters getStateTransitionParameters() {
+    return transitionPolicy.getParameters();
+  }
+
+  /**
+   * Replaces the transition rating parameters without pausing the calls: the calls in flight finish
+   * with either the old or the new parameters. A cached OPEN state rating is reused until it expires,
+   * which takes at most the transitionRatingRefreshQuantum.
+   */
+  public void updateStateTransitionParameters(StateTransitionParameters stateTransitionParameters) {
+    log.info("CircuitBreaker {} state transition parameters are updated: {}", name, stateTransitionParameters);
+    transitionPolicy.setParameters(stateTransitionParameters);
+  }
+
+  /**
+   * The current OPEN to CLOSED transition rating, which is read without affecting the breaker.
+   * It is NaN in the CLOSED state and positive infinity once the OPEN state has lasted too long.
+   */
+  public float getTransitionRating() {
+    return stateReference.get().getTransitionRating();
+  }
+
+  /**
+   * Evaluates the OPEN state off the request path: the rating is calculated and cached for the calls to read,
+   * and the circuit breaker is closed, when the rating has reached the threshold, even if there are no calls.
+   * It is called periodically by the registry for all its circuit breakers, a CLOSED one costs a volatile read.
+   * A circuit breaker, which is not evaluated anymore, e.g. an evicted one, goes back to calculating
+   * the rating on the calls, once the evaluated one has expired.
+   */
+  void evaluateTransition() {
+    if (stateReference.get() instanceof OpenState openState) {
+      openState.evaluateTransition();
+    }
+  }
+
+  /**
+   * Adds a call to the counters shared with the other JVMs.
+   *
+   * @return the updated shared counters, 0 if the state is not shared
+   */
+  private long recordSharedCall(SimpleMetrics metrics, boolean isFailure, long duration, TimeUnit durationUnit) {
+    if (sharedState == null) {
+      return 0L;
+    }
+    boolean isSlow = durationUnit.toNanos(duration) > metrics.getSlowCallDurationThresholdInNanos();
+    return sharedState.record(PackedCallCounters.delta(isFailure, isSlow), packedSlidingWindowSize);
+  }
+
+  private long recordSharedBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                                 int numberOfFailedCalls, int numberOfSlowFailedCalls) {
+    if (sharedState == null) {
+      return 0L;
+    }
+    sharedState.record(PackedCallCounters.delta(false, false), numberOfSuccessfulCalls, packedSlidingWindowSize);
+    sharedState.record(PackedCallCounters.delta(false, true), numberOfSlowSuccessfulCalls, packedSlidingWindowSize);
+    sharedState.record(PackedCallCounters.delta(true, false), numberOfFailedCalls, packedSlidingWindowSize);
+    return sharedState.record(PackedCallCounters.delta(true, true), numberOfSlowFailedCalls, packedSlidingWindowSize);
+  }
+
+  private boolean haveSharedCountersExceededThresholds(long sharedCounters) {
+    return PackedCallCounters.hasExceededThresholds(sharedCounters, packedMinimumNumberOfCalls,
+        circuitBreakerConfig.getFailureRateThreshold(), circuitBreakerConfig.getSlowCallRateThreshold());
+  }
+
+  /**
+   * @return the OPEN state timestamp of this circuit breaker for the wall clock millis of a transition
+   */
+  private long openStateTimestampOf(long openedAtEpochMillis) {
+    long openStateDuration = timestampUnit.convert(
+        Math.max(0L, clock.millis() - openedAtEpochMillis), TimeUnit.MILLISECONDS);
+    return getCurrentTimestamp() - openStateDuration;
+  }
+
+  /**
+   * @return the wall clock millis of an OPEN state timestamp of this circuit breaker, at least 1
+   */
+  private long openedAtEpochMillis(long openStateTransitionTimestamp) {
+    return Math.max(1L, clock.millis() - timestampUnit.toMillis(getCurrentTimestamp() - openStateTransitionTimestamp));
+  }
+
+  /**
+   * The state to persist, the OPEN state timestamp is converted to the wall clock.
+   */
+  PersistedCircuitBreakerState getPersistedState() {
+    SimpleState state = stateReference.get();
+    Snapshot snapshot = state.getMetrics().getSnapshot();
+    long currentEpochMillis = clock.millis();
+    long openedAtEpochMillis = state instanceof OpenState openState
+        ? openedAtEpochMillis(openState.openStateTransitionTimestamp)
+        : 0L;
+    return new PersistedCircuitBreakerState(state.getState() == OPEN, openedAtEpochMillis,
+        snapshot.getNumberOfSuccessfulCalls() - snapshot.getNumberOfSlowSuccessfulCalls(),
+        snapshot.getNumberOfFailedCalls() - snapshot.getNumberOfSlowFailedCalls(),
+        snapshot.getNumberOfSlowSuccessfulCalls(),
+        snapshot.getNumberOfSlowFailedCalls(),
+        currentEpochMillis);
+  }
+
+  /**
+   * Restores a persisted state into a new circuit breaker, before it is used. The time spent in the OPEN state
+   * before the restart is counted as well.
+   */
+  void restoreState(PersistedCircuitBreakerState persistedState) {
+    SimpleMetrics metrics = getMetrics();
+    metrics.restore(persistedState.numberOfSuccessfulCalls(), persistedState.numberOfFailedCalls(),
+        persistedState.numberOfSlowSuccessfulCalls(), persistedState.numberOfSlowFailedCalls());
+    if (persistedState.isOpen()) {
+      OpenState openState = new OpenState(metrics, openStateTimestampOf(persistedState.openedAtEpochMillis()));
+      openState.onEntered(stateReference.getAndSet(openState));
+    }
+    log.info("CircuitBreaker {} restored in {} state", name, getState());
+  }
+
   @Override
   public Map<String, String> getTags() {
     return tags;
   }
 
   @Override
-  public EventPublisher getEventPublisher() {
-    throw new IncorrectStateLogicException("Even publisher is not used in probability implementation");
+  public ThresholdCircuitBreakerEventPublisher getEventPublisher() {
+    return eventPublisher;
   }
 
   @Override
@@ -231,6 +684,8 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
 
     SimpleMetrics getMetrics();
 
+    float getTransitionRating();
+
     boolean tryAcquirePermission();
 
     void acquirePermission();
@@ -242,21 +697,34 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
     void onError(long duration, TimeUnit durationUnit, Throwable throwable);
 
     void onSuccess(long duration, TimeUnit durationUnit);
+
+    void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                 int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos);
+
+    /**
+     * Runs the side effects of entering the state, once, by the thread which has installed it.
+     */
+    void onEntered(SimpleState previousState);
   }
 
   private class ClosedState implements SimpleState {
 
     private final SimpleMetrics circuitBreakerMetrics;
-    private final AtomicBoolean isClosed;
 
     public ClosedState() {
-      this.circuitBreakerMetrics = SimpleMetrics.forClosed(getCircuitBreakerConfig());
-      this.isClosed = new AtomicBoolean(true);
+      this.circuitBreakerMetrics = SimpleMetrics
+          .forClosed(getCircuitBreakerConfig(), getThresholdCircuitBreakerConfig(), clock);
     }
 
     public ClosedState(SimpleMetrics metrics) {
       this.circuitBreakerMetrics = metrics;
-      this.isClosed = new AtomicBoolean(true);
+    }
+
+    @Override
+    public void onEntered(SimpleState previousState) {
+      if (previousState instanceof OpenState openState) {
+        openState.publishClosedState();
+      }
     }
 
     @Override
@@ -269,9 +737,31 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
       return circuitBreakerMetrics;
     }
 
+    @Override
+    public float getTransitionRating() {
+      return Float.NaN;
+    }
+
     @Override
     public boolean tryAcquirePermission() {
-      return isClosed.get();
+      if (sharedState != null) {
+        long sharedStateWord = sharedState.getStateWord();
+        if (SharedCircuitBreakerState.isOpen(sharedStateWord)) {
+          return toSharedOpenState(sharedStateWord);
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Follows the circuit breaker of another JVM, which has been opened, its OPEN state duration is counted as well.
+     */
+    private boolean toSharedOpenState(long sharedStateWord) {
+      if (stateReference.get() == this) {
+        log.info("CircuitBreaker {} follows the shared OPEN state", getName());
+        tryTransition(this, new OpenState(circuitBreakerMetrics, openStateTimestampOf(sharedStateWord)));
+      }
+      return stateReference.get().tryAcquirePermission();
     }
 
     @Override
@@ -286,48 +776,115 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
 
     @Override
     public void handlePossibleTransition(CircuitBreakerConfig.TransitionCheckResult result) {
-      if (result.isTransitionToOpen()) {
-        toOpenState();
-      }
-    }
-
-    private synchronized void toOpenState() {
-      if (isClosed.compareAndSet(true, false)) {
-        transitionToOpenState();
+      if (result.isTransitionToOpen() && stateReference.get() == this) {
+        tryTransition(this, new OpenState(circuitBreakerMetrics));
       }
     }
 
     @Override
     public void onError(long duration, TimeUnit durationUnit, Throwable throwable) {
-      checkIfThresholdsExceeded(circuitBreakerMetrics.onError(duration, durationUnit));
+      checkIfThresholdsExceeded(circuitBreakerMetrics.onError(duration, durationUnit),
+          recordSharedCall(circuitBreakerMetrics, true, duration, durationUnit));
     }
 
     @Override
     public void onSuccess(long duration, TimeUnit durationUnit) {
-      checkIfThresholdsExceeded(circuitBreakerMetrics.onSuccess(duration, durationUnit));
+      checkIfThresholdsExceeded(circuitBreakerMetrics.onSuccess(duration, durationUnit),
+          recordSharedCall(circuitBreakerMetrics, false, duration, durationUnit));
+    }
+
+    @Override
+    public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                        int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+      checkIfThresholdsExceeded(
+          circuitBreakerMetrics.onBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+              numberOfFailedCalls, numberOfSlowFailedCalls, durationsInNanos),
+          recordSharedBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+              numberOfFailedCalls, numberOfSlowFailedCalls));
     }
 
-    private void checkIfThresholdsExceeded(SimpleMetrics.Result result) {
-      if (SimpleMetrics.Result.hasExceededThresholds(result) && isClosed.compareAndSet(true, false)) {
-        transitionToOpenState();
+    private void checkIfThresholdsExceeded(SimpleMetrics.Result result, long sharedCounters) {
+      boolean haveThresholdsExceeded = SimpleMetrics.Result.hasExceededThresholds(result)
+          || sharedState != null && haveSharedCountersExceededThresholds(sharedCounters);
+      if (!haveThresholdsExceeded || stateReference.get() != this) {
+        return;
+      }
+      OpenState openState = new OpenState(circuitBreakerMetrics);
+      if (stateReference.compareAndSet(this, openState)) {
+        publishThresholdsExceededEvents(result, circuitBreakerMetrics);
+        onTransition(this, openState);
       }
     }
   }
 
   private class OpenState implements SimpleState {
 
-    private final SimpleMetrics circuitBreakerMetrics;
+    private static final AtomicReferenceFieldUpdater<OpenState, TransitionRating> CACHED_TRANSITION_RATING =
+        AtomicReferenceFieldUpdater.newUpdater(OpenState.class, TransitionRating.class, "cachedTransitionRating");
 
-    private final AtomicBoolean isOpen;
+    private final SimpleMetrics circuitBreakerMetrics;
 
     private final long openStateTransitionTimestamp;
 
-    private static final float DEFAULT_TRANSITION_RATING_THRESHOLD = 0.4f;
+    // the calls are rejected until then without evaluating anything, NOT_PINNED if the state is not pinned
+    private final long pinnedUntilTimestamp;
+
+    private final long transitionRatingRefreshQuantum;
+
+    // the rating is cached together with its expiration, so a rejected call costs one volatile read
+    private volatile TransitionRating cachedTransitionRating;
+
+    // the shared state word written or followed by this OPEN state, 0 until it is entered or if it is not shared
+    private volatile long sharedOpenStateWord;
+
+    // the JVM, which has opened the shared state, decides when to close it
+    private volatile boolean isFollowingSharedState;
+
+    // null until the rating reaches the threshold in the ramp mode
+    private final AtomicReference<RampUp> rampUp = new AtomicReference<>();
 
     public OpenState(SimpleMetrics circuitBreakerMetrics) {
+      this(circuitBreakerMetrics, getCurrentTimestamp());
+    }
+
+    public OpenState(SimpleMetrics circuitBreakerMetrics, long openStateTransitionTimestamp) {
+      this(circuitBreakerMetrics, openStateTransitionTimestamp, NOT_PINNED);
+    }
+
+    public OpenState(SimpleMetrics circuitBreakerMetrics, long openStateTransitionTimestamp,
+                     long pinnedUntilTimestamp) {
       this.circuitBreakerMetrics = circuitBreakerMetrics;
-      this.isOpen = new AtomicBoolean(true);
-      this.openStateTransitionTimestamp = getCurrentTimestamp();
+      this.openStateTransitionTimestamp = openStateTransitionTimestamp;
+      this.pinnedUntilTimestamp = pinnedUntilTimestamp;
+      this.transitionRatingRefreshQuantum = timestampUnit
+          .convert(thresholdCircuitBreakerConfig.getTransitionRatingRefreshQuantum());
+      this.cachedTransitionRating = TransitionRating.EXPIRED;
+    }
+
+    @Override
+    public void onEntered(SimpleState previousState) {
+      if (sharedState == null) {
+        return;
+      }
+      // opens the circuit breakers of the other JVMs, unless one of them has been opened already
+      long openedAtEpochMillis = openedAtEpochMillis(openStateTransitionTimestamp);
+      long sharedStateWord;
+      do {
+        sharedStateWord = sharedState.getStateWord();
+      } while (!SharedCircuitBreakerState.isOpen(sharedStateWord)
+          && !sharedState.compareAndSetStateWord(sharedStateWord, openedAtEpochMillis));
+      // the flag is written first, so it is valid once the word is seen
+      this.isFollowingSharedState = SharedCircuitBreakerState.isOpen(sharedStateWord);
+      this.sharedOpenStateWord = isFollowingSharedState ? sharedStateWord : openedAtEpochMillis;
+    }
+
+    /**
+     * Closes the circuit breakers of the other JVMs, unless they have made another transition since this OPEN state.
+     */
+    private void publishClosedState() {
+      if (sharedState != null && sharedOpenStateWord != 0L) {
+        sharedState.compareAndSetStateWord(sharedOpenStateWord, -Math.max(1L, clock.millis()));
+      }
     }
 
     @Override
@@ -342,32 +899,192 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
 
     @Override
     public boolean tryAcquirePermission() {
-      // get the transitioning rating from OPEN to CLOSED state and compare it with the threshold
-      if (isOpen.get()) {
-        float toClosedTransitionRating = calculateTransitionRatingValue();
-        log.info("Calculated transition rating {}", toClosedTransitionRating);
-        if (toClosedTransitionRating >= DEFAULT_TRANSITION_RATING_THRESHOLD) {
+      // nothing is evaluated, but the rejection is still counted and published like any other one
+      if (isPinned()) {
+        circuitBreakerMetrics.onCallNotPermitted();
+        publishCallNotPermittedEvent();
+        return false;
+      }
+      // the shared state is checked only once this OPEN state has published or followed it
+      if (sharedState != null && sharedOpenStateWord != 0L) {
+        if (!SharedCircuitBreakerState.isOpen(sharedState.getStateWord())) {
+          log.debug("Closing, because the shared state has been closed");
           toClosedState();
           return true;
         }
-        log.debug("Declining the request, because the state is still OPEN");
-        circuitBreakerMetrics.onCallNotPermitted();
-        return false;
+        if (isFollowingSharedState) {
+          return tryAcquireFollowingPermission();
+        }
       }
-      return true;
+      // get the transitioning rating from OPEN to CLOSED state and compare it with the threshold
+      float toClosedTransitionRating = getTransitionRatingValue();
+      float transitionRatingThreshold = transitionPolicy.getParameters().getTransitionRatingThreshold();
+      if (rampUpDuration > 0 && toClosedTransitionRating != Float.POSITIVE_INFINITY) {
+        if (tryAcquireRampUpPermission(toClosedTransitionRating, transitionRatingThreshold)) {
+          return true;
+        }
+      } else if (toClosedTransitionRating >= transitionRatingThreshold) {
+        toClosedState();
+        return true;
+      }
+      // a thread, which has lost the rating refresh, asks the new state, once the winner has closed this one
+      SimpleState currentState = stateReference.get();
+      if (currentState != this) {
+        return currentState.tryAcquirePermission();
+      }
+      log.debug("Declining the request, because the state is still OPEN");
+      circuitBreakerMetrics.onCallNotPermitted();
+      publishCallNotPermittedEvent();
+      return false;
+    }
+
+    /**
+     * Admits a growing share of the calls once the rating has reached the threshold, instead of all of them at once.
+     * The admission probability grows with the rating and with the time since the ramp-up started,
+     * it reaches 1 after the rampUpDuration, when the rating stays at the threshold. The circuit breaker is closed
+     * only then and only if the admitted calls are healthy, and the ramp-up is abandoned when they exceed
+     * the thresholds.
+     */
+    private boolean tryAcquireRampUpPermission(float toClosedTransitionRating, float transitionRatingThreshold) {
+      RampUp currentRampUp = rampUp.get();
+      long currentTimestamp = getCurrentTimestamp();
+      if (currentRampUp == null) {
+        if (toClosedTransitionRating < transitionRatingThreshold) {
+          return false;
+        }
+        if (rampUp.compareAndSet(null, new RampUp(currentTimestamp))) {
+          log.debug("CircuitBreaker {} starts the ramp-up, rating {}", getName(), toClosedTransitionRating);
+        }
+        currentRampUp = rampUp.get();
+        if (currentRampUp == null) {
+          return false;
+        }
+      }
+      float timeProgress = (float) (currentTimestamp - currentRampUp.startTimestamp) / rampUpDuration;
+      float admissionProbability = Math.max(MIN_RAMP_UP_ADMISSION_PROBABILITY,
+          Math.min(1.0f, timeProgress * toClosedTransitionRating / transitionRatingThreshold));
+      if (admissionProbability >= 1.0f && currentRampUp.isHealthy()) {
+        toClosedState();
+        return true;
+      }
+      return ThreadLocalRandom.current().nextFloat() < admissionProbability;
+    }
+
+    private void recordRampUpCalls(long delta, int numberOfCalls) {
+      RampUp currentRampUp = rampUp.get();
+      if (currentRampUp != null && numberOfCalls > 0 && currentRampUp.record(delta, numberOfCalls)
+          && rampUp.compareAndSet(currentRampUp, null)) {
+        log.debug("CircuitBreaker {} abandons the ramp-up, the admitted calls have exceeded the thresholds",
+            getName());
+      }
+    }
+
+    private void recordRampUpCall(boolean isFailure, long duration, TimeUnit durationUnit) {
+      if (rampUp.get() != null) {
+        boolean isSlow = durationUnit.toNanos(duration) > circuitBreakerMetrics.getSlowCallDurationThresholdInNanos();
+        recordRampUpCalls(PackedCallCounters.delta(isFailure, isSlow), 1);
+      }
+    }
+
+    /**
+     * Waits for the shared state to be closed, unless the OPEN state has lasted too long,
+     * e.g. because the JVM, which has opened it, is gone.
+     */
+    private boolean tryAcquireFollowingPermission() {
+      if (hasFollowedSharedStateTooLong()) {
+        toClosedState();
+        return true;
+      }
+      circuitBreakerMetrics.onCallNotPermitted();
+      publishCallNotPermittedEvent();
+      return false;
+    }
+
+    private boolean hasFollowedSharedStateTooLong() {
+      long currentOpenStateDuration = timestampUnit.toNanos(getCurrentTimestamp() - openStateTransitionTimestamp);
+      return currentOpenStateDuration > transitionPolicy.getParameters().getOpenStateDurationThreshold().toNanos();
+    }
+
+    private boolean isPinned() {
+      return pinnedUntilTimestamp != NOT_PINNED && getCurrentTimestamp() < pinnedUntilTimestamp;
     }
 
-    private synchronized void toClosedState() {
-      if (isOpen.compareAndSet(true, false)) {
-        transitionToClosedState();
+    private void evaluateTransition() {
+      if (isPinned()) {
+        return;
       }
+      if (sharedState != null && sharedOpenStateWord != 0L) {
+        boolean isClosing = !SharedCircuitBreakerState.isOpen(sharedState.getStateWord())
+            || isFollowingSharedState && hasFollowedSharedStateTooLong();
+        if (isClosing) {
+          toClosedState();
+        }
+        if (isClosing || isFollowingSharedState) {
+          return;
+        }
+      }
+      long currentTimestamp = getCurrentTimestamp();
+      float toClosedTransitionRating = calculateTransitionRatingValue(currentTimestamp);
+      cachedTransitionRating = new TransitionRating(toClosedTransitionRating,
+          currentTimestamp + transitionEvaluationValidity);
+      // a ramp-up needs the calls, so it is still started and finished by them
+      boolean isClosedAtOnce = rampUpDuration == 0 || toClosedTransitionRating == Float.POSITIVE_INFINITY;
+      if (isClosedAtOnce
+          && toClosedTransitionRating >= transitionPolicy.getParameters().getTransitionRatingThreshold()) {
+        log.debug("Closing, the evaluated transition rating is {}", toClosedTransitionRating);
+        toClosedState();
+      }
+    }
+
+    /**
+     * The recorded outcomes change the rating, unless it is evaluated in the background,
+     * then the calls keep reading the evaluated one.
+     */
+    private void expireTransitionRating() {
+      if (transitionEvaluationValidity == 0) {
+        cachedTransitionRating = TransitionRating.EXPIRED;
+      }
+    }
+
+    @Override
+    public float getTransitionRating() {
+      long currentTimestamp = getCurrentTimestamp();
+      TransitionRating transitionRating = cachedTransitionRating;
+      return currentTimestamp < transitionRating.expirationTimestamp
+          ? transitionRating.value
+          : calculateTransitionRatingValue(currentTimestamp);
     }
 
-    private float calculateTransitionRatingValue() {
+    private float getTransitionRatingValue() {
+      long currentTimestamp = getCurrentTimestamp();
+      TransitionRating transitionRating = cachedTransitionRating;
+      if (currentTimestamp < transitionRating.expirationTimestamp) {
+        return transitionRating.value;
+      }
+      // a single thread refreshes the expired rating, the others go on with the old one meanwhile
+      if (!CACHED_TRANSITION_RATING.compareAndSet(this, transitionRating,
+          new TransitionRating(transitionRating.value, currentTimestamp + transitionRatingRefreshQuantum))) {
+        return transitionRating.value;
+      }
+      float toClosedTransitionRating = calculateTransitionRatingValue(currentTimestamp);
+      log.debug("Calculated transition rating {}", toClosedTransitionRating);
+      cachedTransitionRating = new TransitionRating(toClosedTransitionRating,
+          currentTimestamp + transitionRatingRefreshQuantum);
+      return toClosedTransitionRating;
+    }
+
+    /**
+     * The threads, which lose the transition, are permitted as well, as the circuit breaker is closed by then.
+     */
+    private void toClosedState() {
+      tryTransition(this, new ClosedState(circuitBreakerMetrics));
+    }
+
+    private float calculateTransitionRatingValue(long currentTimestamp) {
       // Calculate the probability of transitioning to the Closed state
-      long currentOpenStateDuration = getCurrentTimestamp() - openStateTransitionTimestamp;
+      long currentOpenStateDuration = currentTimestamp - openStateTransitionTimestamp;
       log.debug("Current open state duration in nanos: {}", currentOpenStateDuration);
-      return stateTransitionCalculator.calculateTransitionValue(circuitBreakerMetrics, currentOpenStateDuration);
+      return transitionPolicy.calculateTransitionValue(circuitBreakerMetrics, currentOpenStateDuration);
     }
 
     @Override
@@ -380,8 +1097,8 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
 
     @Override
     public void releasePermission() {
-      throw new IncorrectStateLogicException(
-          "Permission release must not be initiated in ThresholdCircuitBreaker");
+      // noOp: the permissions are not counted, but a call permitted in the CLOSED state
+      // can be cancelled (e.g. a Reactor subscription) or ignored after the transition to OPEN
     }
 
     @Override
@@ -392,11 +1109,299 @@ public class ThresholdCircuitBreaker implements CircuitBreaker {
     @Override
     public void onError(long duration, TimeUnit durationUnit, Throwable throwable) {
       circuitBreakerMetrics.onError(duration, durationUnit);
+      recordSharedCall(circuitBreakerMetrics, true, duration, durationUnit);
+      recordRampUpCall(true, duration, durationUnit);
+      expireTransitionRating();
     }
 
     @Override
     public void onSuccess(long duration, TimeUnit durationUnit) {
       circuitBreakerMetrics.onSuccess(duration, durationUnit);
+      recordSharedCall(circuitBreakerMetrics, false, duration, durationUnit);
+      recordRampUpCall(false, duration, durationUnit);
+      expireTransitionRating();
+    }
+
+    @Override
+    public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                        int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+      circuitBreakerMetrics.onBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+          numberOfFailedCalls, numberOfSlowFailedCalls, durationsInNanos);
+      recordSharedBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+          numberOfFailedCalls, numberOfSlowFailedCalls);
+      recordRampUpCalls(PackedCallCounters.delta(false, false), numberOfSuccessfulCalls);
+      recordRampUpCalls(PackedCallCounters.delta(false, true), numberOfSlowSuccessfulCalls);
+      recordRampUpCalls(PackedCallCounters.delta(true, false), numberOfFailedCalls);
+      recordRampUpCalls(PackedCallCounters.delta(true, true), numberOfSlowFailedCalls);
+      expireTransitionRating();
+    }
+  }
+
+  /**
+   * Rejects every call with a type check, nothing else is evaluated or recorded.
+   */
+  private class ForcedOpenState implements SimpleState {
+
+    private final SimpleMetrics circuitBreakerMetrics;
+
+    ForcedOpenState(SimpleMetrics circuitBreakerMetrics) {
+      this.circuitBreakerMetrics = circuitBreakerMetrics;
+    }
+
+    @Override
+    public State getState() {
+      return State.FORCED_OPEN;
+    }
+
+    @Override
+    public SimpleMetrics getMetrics() {
+      return circuitBreakerMetrics;
+    }
+
+    @Override
+    public float getTransitionRating() {
+      return Float.NaN;
+    }
+
+    @Override
+    public boolean tryAcquirePermission() {
+      circuitBreakerMetrics.onCallNotPermitted();
+      publishCallNotPermittedEvent();
+      return false;
+    }
+
+    @Override
+    public void acquirePermission() {
+      if (!tryAcquirePermission()) {
+        throw CallNotPermittedException
+            .createCallNotPermittedException(ThresholdCircuitBreaker.this);
+      }
+    }
+
+    @Override
+    public void releasePermission() {
+      //noOp
+    }
+
+    @Override
+    public void handlePossibleTransition(CircuitBreakerConfig.TransitionCheckResult result) {
+      //noOp
+    }
+
+    @Override
+    public void onError(long duration, TimeUnit durationUnit, Throwable throwable) {
+      //noOp: the calls permitted before the transition are not recorded
+    }
+
+    @Override
+    public void onSuccess(long duration, TimeUnit durationUnit) {
+      //noOp
+    }
+
+    @Override
+    public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                        int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+      //noOp
+    }
+
+    @Override
+    public void onEntered(SimpleState previousState) {
+      //noOp: the shared state is left to the other JVMs
+    }
+  }
+
+  /**
+   * Permits every call and records nothing, the outcomes are dropped before they get here.
+   */
+  private class DisabledState implements SimpleState {
+
+    private final SimpleMetrics circuitBreakerMetrics;
+
+    DisabledState(SimpleMetrics circuitBreakerMetrics) {
+      this.circuitBreakerMetrics = circuitBreakerMetrics;
+    }
+
+    @Override
+    public State getState() {
+      return State.DISABLED;
+    }
+
+    @Override
+    public SimpleMetrics getMetrics() {
+      return circuitBreakerMetrics;
+    }
+
+    @Override
+    public float getTransitionRating() {
+      return Float.NaN;
+    }
+
+    @Override
+    public boolean tryAcquirePermission() {
+      return true;
+    }
+
+    @Override
+    public void acquirePermission() {
+      //noOp
+    }
+
+    @Override
+    public void releasePermission() {
+      //noOp
+    }
+
+    @Override
+    public void handlePossibleTransition(CircuitBreakerConfig.TransitionCheckResult result) {
+      //noOp
+    }
+
+    @Override
+    public void onError(long duration, TimeUnit durationUnit, Throwable throwable) {
+      //noOp
+    }
+
+    @Override
+    public void onSuccess(long duration, TimeUnit durationUnit) {
+      //noOp
+    }
+
+    @Override
+    public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                        int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+      //noOp
+    }
+
+    @Override
+    public void onEntered(SimpleState previousState) {
+      // the other JVMs are not kept OPEN by a circuit breaker, which does not reject the calls anymore
+      if (previousState instanceof OpenState openState) {
+        openState.publishClosedState();
+      }
+    }
+  }
+
+  /**
+   * Permits every call and records the outcomes in the sliding window, but never opens the circuit breaker.
+   */
+  private class MetricsOnlyState implements SimpleState {
+
+    private final SimpleMetrics circuitBreakerMetrics;
+
+    MetricsOnlyState(SimpleMetrics circuitBreakerMetrics) {
+      this.circuitBreakerMetrics = circuitBreakerMetrics;
+    }
+
+    @Override
+    public State getState() {
+      return State.METRICS_ONLY;
+    }
+
+    @Override
+    public SimpleMetrics getMetrics() {
+      return circuitBreakerMetrics;
+    }
+
+    @Override
+    public float getTransitionRating() {
+      return Float.NaN;
+    }
+
+    @Override
+    public boolean tryAcquirePermission() {
+      return true;
+    }
+
+    @Override
+    public void acquirePermission() {
+      //noOp
+    }
+
+    @Override
+    public void releasePermission() {
+      //noOp
+    }
+
+    @Override
+    public void handlePossibleTransition(CircuitBreakerConfig.TransitionCheckResult result) {
+      //noOp
+    }
+
+    @Override
+    public void onError(long duration, TimeUnit durationUnit, Throwable throwable) {
+      circuitBreakerMetrics.onError(duration, durationUnit);
+    }
+
+    @Override
+    public void onSuccess(long duration, TimeUnit durationUnit) {
+      circuitBreakerMetrics.onSuccess(duration, durationUnit);
+    }
+
+    @Override
+    public void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                        int numberOfFailedCalls, int numberOfSlowFailedCalls, @Nullable long[] durationsInNanos) {
+      circuitBreakerMetrics.onBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+          numberOfFailedCalls, numberOfSlowFailedCalls, durationsInNanos);
+    }
+
+    @Override
+    public void onEntered(SimpleState previousState) {
+      if (previousState instanceof OpenState openState) {
+        openState.publishClosedState();
+      }
+    }
+  }
+
+  /**
+   * The calls admitted since the start of a ramp-up, in the {@link PackedCallCounters}.
+   */
+  private final class RampUp {
+
+    private final long startTimestamp;
+    private final AtomicLong counters = new AtomicLong();
+
+    private RampUp(long startTimestamp) {
+      this.startTimestamp = startTimestamp;
+    }
+
+    /**
+     * @return true if the admitted calls have exceeded the thresholds
+     */
+    private boolean record(long delta, int numberOfCalls) {
+      long current;
+      long updated;
+      do {
+        current = counters.get();
+        updated = PackedCallCounters.add(current, delta, numberOfCalls, packedSlidingWindowSize);
+      } while (!counters.compareAndSet(current, updated));
+      return PackedCallCounters.hasExceededThresholds(updated, packedMinimumNumberOfCalls,
+          circuitBreakerConfig.getFailureRateThreshold(), circuitBreakerConfig.getSlowCallRateThreshold());
+    }
+
+    /**
+     * @return true if there have been enough admitted calls and they are below the thresholds
+     */
+    private boolean isHealthy() {
+      long current = counters.get();
+      return PackedCallCounters.getNumberOfCalls(current) >= packedMinimumNumberOfCalls
+          && !PackedCallCounters.hasExceededThresholds(current, packedMinimumNumberOfCalls,
+          circuitBreakerConfig.getFailureRateThreshold(), circuitBreakerConfig.getSlowCallRateThreshold());
+    }
+  }
+
+  /**
+   * The OPEN to CLOSED transition rating, which stays valid until the expiration timestamp.
+   */
+  private static final class TransitionRating {
+
+    private static final TransitionRating EXPIRED = new TransitionRating(0.0f, Long.MIN_VALUE);
+
+    private final float value;
+    private final long expirationTimestamp;
+
+    private TransitionRating(float value, long expirationTimestamp) {
+      this.value = value;
+      this.expirationTimestamp = expirationTimestamp;
     }
   }
 }
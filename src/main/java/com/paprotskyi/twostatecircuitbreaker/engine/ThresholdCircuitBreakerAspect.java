@@ -5,7 +5,9 @@ import io.github.resilience4j.core.functions.CheckedSupplier;
 import io.github.resilience4j.core.lang.Nullable;
 import io.github.resilience4j.spring6.circuitbreaker.configure.CircuitBreakerAspect;
 import io.github.resilience4j.spring6.circuitbreaker.configure.CircuitBreakerAspectExt;
+import io.github.resilience4j.spring6.fallback.FallbackDecorators;
 import io.github.resilience4j.spring6.fallback.FallbackExecutor;
+import io.github.resilience4j.spring6.fallback.FallbackMethod;
 import io.github.resilience4j.spring6.spelresolver.SpelResolver;
 import io.github.resilience4j.spring6.utils.AnnotationExtractor;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -23,6 +25,8 @@ import java.lang.reflect.Proxy;
 import java.util.List;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class is a copy of {@link CircuitBreakerAspect CircuitBreakerAspect},
@@ -33,21 +37,32 @@ import java.util.concurrent.CompletionStage;
 public class ThresholdCircuitBreakerAspect {
 
   private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerAspect.class);
+  private static final Object[] EMPTY_ARGUMENTS = new Object[0];
 
   private final ThresholdCircuitBreakerRegistry thresholdCircuitBreakerRegistry;
   private final @Nullable
   List<CircuitBreakerAspectExt> circuitBreakerAspectExtList;
   private final FallbackExecutor fallbackExecutor;
+  private final FallbackDecorators fallbackDecorators;
   private final SpelResolver spelResolver;
+  //an inherited method is annotated by the class of each target, so the plans are kept per target class
+  private final ClassValue<ConcurrentMap<Method, InvocationPlan>> invocationPlans = new ClassValue<>() {
+    @Override
+    protected ConcurrentMap<Method, InvocationPlan> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<>();
+    }
+  };
 
   public ThresholdCircuitBreakerAspect(ThresholdCircuitBreakerRegistry thresholdCircuitBreakerRegistry,
                                        @Autowired(required = false)
                                        List<CircuitBreakerAspectExt> circuitBreakerAspectExtList,
                                        FallbackExecutor fallbackExecutor,
+                                       FallbackDecorators fallbackDecorators,
                                        SpelResolver spelResolver) {
     this.thresholdCircuitBreakerRegistry = thresholdCircuitBreakerRegistry;
     this.circuitBreakerAspectExtList = circuitBreakerAspectExtList;
     this.fallbackExecutor = fallbackExecutor;
+    this.fallbackDecorators = fallbackDecorators;
     this.spelResolver = spelResolver;
   }
 
@@ -61,38 +76,115 @@ public class ThresholdCircuitBreakerAspect {
                                                     @Nullable ThresholdCircuitBreaker circuitBreakerAnnotation)
       throws Throwable {
     Method method = ((MethodSignature) proceedingJoinPoint.getSignature()).getMethod();
+    ConcurrentMap<Method, InvocationPlan> targetInvocationPlans =
+        invocationPlans.get(proceedingJoinPoint.getTarget().getClass());
+    InvocationPlan invocationPlan = targetInvocationPlans.get(method);
+    if (invocationPlan == null) {
+      if (circuitBreakerAnnotation == null) {
+        circuitBreakerAnnotation = getCircuitBreakerAnnotation(proceedingJoinPoint);
+      }
+      if (circuitBreakerAnnotation == null) { //because annotations wasn't found
+        return proceedingJoinPoint.proceed();
+      }
+      ThresholdCircuitBreaker annotation = circuitBreakerAnnotation;
+      Object target = proceedingJoinPoint.getTarget();
+      invocationPlan = targetInvocationPlans.computeIfAbsent(method,
+          key -> createInvocationPlan(key, annotation, target));
+    }
+    io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker = invocationPlan.circuitBreaker != null
+        ? invocationPlan.circuitBreaker
+        : getOrCreateCircuitBreaker(invocationPlan.methodName,
+        spelResolver.resolve(method, proceedingJoinPoint.getArgs(), invocationPlan.circuitBreakerName));
+    ReturnTypeHandler returnTypeHandler = invocationPlan.returnTypeHandler;
+    final CheckedSupplier<Object>
+        circuitBreakerExecution = () -> returnTypeHandler.handle(proceedingJoinPoint, circuitBreaker);
+    return executeWithFallback(proceedingJoinPoint, method, invocationPlan, circuitBreakerExecution);
+  }
+
+  /**
+   * Resolves everything, which does not depend on the call arguments, only once per method and target class.
+   */
+  private InvocationPlan createInvocationPlan(Method method, ThresholdCircuitBreaker circuitBreakerAnnotation,
+                                              Object target) {
     String methodName = method.getDeclaringClass().getName() + "#" + method.getName();
-    if (circuitBreakerAnnotation == null) {
-      circuitBreakerAnnotation = getCircuitBreakerAnnotation(proceedingJoinPoint);
+    String circuitBreakerName = circuitBreakerAnnotation.name();
+    io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker = null;
+    //a circuit breaker of a bounded registry can be evicted, so it is looked up on each call instead of being kept
+    if (!dependsOnCall(circuitBreakerName) && !thresholdCircuitBreakerRegistry.isBounded()) {
+      circuitBreaker = getOrCreateCircuitBreaker(methodName,
+          spelResolver.resolve(method, EMPTY_ARGUMENTS, circuitBreakerName));
     }
-    if (circuitBreakerAnnotation == null) { //because annotations wasn't found
-      return proceedingJoinPoint.proceed();
+    String fallbackMethod = circuitBreakerAnnotation.fallbackMethod();
+    boolean dynamicFallback = dependsOnCall(fallbackMethod);
+    FallbackMethod boundFallback = null;
+    if (!dynamicFallback && !fallbackMethod.isEmpty()) {
+      fallbackMethod = spelResolver.resolve(method, EMPTY_ARGUMENTS, fallbackMethod);
+      try {
+        //the fallback is matched by the method signature, the arguments and the target are only bound to it
+        FallbackMethod fallback = FallbackMethod.create(fallbackMethod, method,
+            new Object[method.getParameterCount()], target);
+        if (method.getParameterCount() == 0) {
+          boundFallback = fallback;
+        }
+      } catch (NoSuchMethodException ex) {
+        logger.warn("No fallback method match found", ex);
+        fallbackMethod = "";
+      }
     }
-    String backend = spelResolver.resolve(method, proceedingJoinPoint.getArgs(), circuitBreakerAnnotation.name());
-    io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker = getOrCreateCircuitBreaker(
-        methodName, backend);
-    Class<?> returnType = method.getReturnType();
-    final CheckedSupplier<Object>
-        circuitBreakerExecution = () -> proceed(proceedingJoinPoint, methodName, circuitBreaker, returnType);
-    return fallbackExecutor.execute(proceedingJoinPoint, method, circuitBreakerAnnotation.fallbackMethod(),
-        circuitBreakerExecution);
+    return new InvocationPlan(methodName, circuitBreakerName, circuitBreaker,
+        createReturnTypeHandler(methodName, method.getReturnType()), fallbackMethod, dynamicFallback,
+        boundFallback, target);
   }
 
-  private Object proceed(ProceedingJoinPoint proceedingJoinPoint, String methodName,
-                         io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker, Class<?> returnType)
-      throws Throwable {
+  /**
+   * The method parameter and bean references have to be evaluated on each call,
+   * the plain literals and the property placeholders are constant.
+   */
+  private static boolean dependsOnCall(String expression) {
+    return expression.startsWith("#") || expression.startsWith("@");
+  }
+
+  private ReturnTypeHandler createReturnTypeHandler(String methodName, Class<?> returnType) {
     if (circuitBreakerAspectExtList != null && !circuitBreakerAspectExtList.isEmpty()) {
       for (CircuitBreakerAspectExt circuitBreakerAspectExt : circuitBreakerAspectExtList) {
         if (circuitBreakerAspectExt.canHandleReturnType(returnType)) {
-          return circuitBreakerAspectExt
+          return (proceedingJoinPoint, circuitBreaker) -> circuitBreakerAspectExt
               .handle(proceedingJoinPoint, circuitBreaker, methodName);
         }
       }
     }
     if (CompletionStage.class.isAssignableFrom(returnType)) {
-      return handleJoinPointCompletableFuture(proceedingJoinPoint, circuitBreaker);
+      return this::handleJoinPointCompletableFuture;
     }
-    return defaultHandling(proceedingJoinPoint, circuitBreaker);
+    return this::defaultHandling;
+  }
+
+  /**
+   * The same as {@link FallbackExecutor#execute FallbackExecutor.execute}, but with the fallback method resolved
+   * in advance. It is only bound to the call, when the call has arguments or another target.
+   * The executor is still used for the fallback methods, which depend on the call.
+   */
+  private Object executeWithFallback(ProceedingJoinPoint proceedingJoinPoint, Method method,
+                                     InvocationPlan invocationPlan,
+                                     CheckedSupplier<Object> circuitBreakerExecution) throws Throwable {
+    if (invocationPlan.dynamicFallback) {
+      return fallbackExecutor.execute(proceedingJoinPoint, method, invocationPlan.fallbackMethod,
+          circuitBreakerExecution);
+    }
+    if (invocationPlan.fallbackMethod.isEmpty()) {
+      return circuitBreakerExecution.get();
+    }
+    FallbackMethod fallbackMethod = invocationPlan.boundFallback;
+    if (fallbackMethod == null || proceedingJoinPoint.getTarget() != invocationPlan.boundTarget) {
+      try {
+        fallbackMethod = FallbackMethod.create(invocationPlan.fallbackMethod, method,
+            proceedingJoinPoint.getArgs(), proceedingJoinPoint.getTarget());
+      } catch (NoSuchMethodException ex) {
+        logger.warn("No fallback method match found", ex);
+        return circuitBreakerExecution.get();
+      }
+    }
+    return fallbackDecorators.decorate(fallbackMethod, circuitBreakerExecution).get();
   }
 
   private io.github.resilience4j.circuitbreaker.CircuitBreaker getOrCreateCircuitBreaker(
@@ -127,7 +219,8 @@ public class ThresholdCircuitBreakerAspect {
   }
 
   /**
-   * handle the CompletionStage return types AOP based into configured circuit-breaker
+   * handle the CompletionStage return types AOP based into configured circuit-breaker,
+   * a ThresholdCircuitBreaker in the timeout mode also times out the returned stage
    */
   private Object handleJoinPointCompletableFuture(ProceedingJoinPoint proceedingJoinPoint,
                                                   io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker) {
@@ -148,4 +241,42 @@ public class ThresholdCircuitBreakerAspect {
     return circuitBreaker.executeCheckedSupplier(proceedingJoinPoint::proceed);
   }
 
+  @FunctionalInterface
+  private interface ReturnTypeHandler {
+
+    Object handle(ProceedingJoinPoint proceedingJoinPoint,
+                  io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker) throws Throwable;
+  }
+
+  /**
+   * The immutable per-method part of the advice: the circuit breaker, when its name is constant,
+   * the return type handler and the fallback method, bound to the first target, when the method has no arguments.
+   */
+  private static final class InvocationPlan {
+
+    private final String methodName;
+    private final String circuitBreakerName;
+    @Nullable
+    private final io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker;
+    private final ReturnTypeHandler returnTypeHandler;
+    private final String fallbackMethod;
+    private final boolean dynamicFallback;
+    @Nullable
+    private final FallbackMethod boundFallback;
+    private final Object boundTarget;
+
+    private InvocationPlan(String methodName, String circuitBreakerName,
+                           @Nullable io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker,
+                           ReturnTypeHandler returnTypeHandler, String fallbackMethod, boolean dynamicFallback,
+                           @Nullable FallbackMethod boundFallback, Object boundTarget) {
+      this.methodName = methodName;
+      this.circuitBreakerName = circuitBreakerName;
+      this.circuitBreaker = circuitBreaker;
+      this.returnTypeHandler = returnTypeHandler;
+      this.fallbackMethod = fallbackMethod;
+      this.dynamicFallback = dynamicFallback;
+      this.boundFallback = boundFallback;
+      this.boundTarget = boundTarget;
+    }
+  }
 }
@@ -0,0 +1,103 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * The settings of the ThresholdCircuitBreaker, which are not covered by the
+ * {@link io.github.resilience4j.circuitbreaker.CircuitBreakerConfig CircuitBreakerConfig}.
+ * The breaker is still configured with the Resilience4j config, this one only extends it.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ThresholdCircuitBreakerConfig {
+
+  /**
+   * The implementation of the COUNT_BASED sliding window, which is used by the {@link SimpleMetrics}.
+   */
+  @Builder.Default
+  SlidingWindowImplementation slidingWindowImplementation = SlidingWindowImplementation.SYNCHRONIZED;
+
+  /**
+   * How long the OPEN state reuses the calculated OPEN to CLOSED transition rating,
+   * unless new outcomes are recorded. Zero means the rating is calculated on each call.
+   */
+  @Builder.Default
+  Duration transitionRatingRefreshQuantum = Duration.ofMillis(1);
+
+  /**
+   * The capacity of the event buffer, rounded up to a power of two.
+   * The events published while the buffer is full are dropped.
+   */
+  @Builder.Default
+  int eventBufferSize = 1024;
+
+  /**
+   * The initial transition rating parameters, they can be updated later on a running breaker.
+   */
+  @Builder.Default
+  StateTransitionParameters stateTransitionParameters = StateTransitionParameters.ofDefaults();
+
+  /**
+   * Creates the {@link TransitionPolicy} of every breaker, one of the {@link TransitionPolicy.BuiltIn} or a custom one.
+   */
+  @Builder.Default
+  TransitionPolicy.Factory transitionPolicy = TransitionPolicy.BuiltIn.WEIGHTED_SUM;
+
+  /**
+   * The window of the latency quantiles, see {@link SimpleMetrics#getLatencyQuantileInNanos(double)}.
+   */
+  @Builder.Default
+  Duration latencyQuantileWindow = Duration.ofMinutes(1);
+
+  /**
+   * Enables the adaptive slow call threshold when above 0: a call is slow when it is longer than
+   * the p99 latency of the quantile window multiplied by this value. The fixed slowCallDurationThreshold
+   * is used until the window has the minimum number of calls.
+   */
+  @Builder.Default
+  float adaptiveSlowCallDurationMultiplier = 0;
+
+  /**
+   * Enables the timeout mode of the CompletionStage calls when above 0: a call is completed with
+   * a TimeoutException and recorded as a slow error, once it has lasted the current slow call duration threshold
+   * multiplied by this value. It must be at least 1, so the timed out calls are slow.
+   */
+  @Builder.Default
+  float callTimeoutMultiplier = 0;
+
+  /**
+   * Enables the ramp-up from the OPEN state when above 0: once the transition rating reaches the threshold,
+   * a growing random share of the calls is admitted, all of them after about this duration,
+   * and the breaker is closed only if the admitted calls stay below the thresholds.
+   * Zero means the breaker is closed at once, when the rating reaches the threshold.
+   */
+  @Builder.Default
+  Duration rampUpDuration = Duration.ZERO;
+
+  /**
+   * Caches the verdict of the ignore and record exception predicates per exception class, so a failure
+   * is classified with a single lookup. It must only be enabled, when the predicates depend on the exception
+   * class alone, e.g. they come from the record-exceptions and ignore-exceptions lists.
+   */
+  @Builder.Default
+  boolean exceptionVerdictCached = false;
+
+  public static ThresholdCircuitBreakerConfig ofDefaults() {
+    return ThresholdCircuitBreakerConfig.builder().build();
+  }
+
+  public enum SlidingWindowImplementation {
+    /**
+     * The Resilience4j FixedSizeSlidingWindowMetrics, guarded by a single monitor.
+     */
+    SYNCHRONIZED,
+    /**
+     * The lock-free {@link com.paprotskyi.twostatecircuitbreaker.engine.metrics.StripedSlidingWindowMetrics},
+     * which is suitable for the hot breakers with many concurrent callers.
+     */
+    STRIPED
+  }
+}
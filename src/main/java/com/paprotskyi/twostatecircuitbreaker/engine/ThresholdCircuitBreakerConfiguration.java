@@ -17,15 +17,20 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
 
 @Configuration
-@EnableConfigurationProperties(CircuitBreakerProperties.class)
+@EnableConfigurationProperties({CircuitBreakerProperties.class, ThresholdCircuitBreakerProperties.class})
 public class ThresholdCircuitBreakerConfiguration {
 
   //Has protected access in the original library functionality
   private static final String DEFAULT_CONFIG_KEY = "default";
+  // the same default as in the CircuitBreakerConfiguration
+  private static final int DEFAULT_EVENT_CONSUMER_BUFFER_SIZE = 100;
 
   protected final CircuitBreakerConfiguration circuitBreakerConfiguration;
   protected final CircuitBreakerConfigurationProperties circuitBreakerProperties;
@@ -50,10 +55,56 @@ public class ThresholdCircuitBreakerConfiguration {
     return CircuitBreakerConfig.ofDefaults();
   }
 
+  @Bean
+  public ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig(
+      ThresholdCircuitBreakerProperties thresholdCircuitBreakerProperties) {
+    return thresholdCircuitBreakerProperties.createThresholdCircuitBreakerConfig(DEFAULT_CONFIG_KEY);
+  }
+
+  /**
+   * The events of every created ThresholdCircuitBreaker are passed to the EventConsumerRegistry,
+   * the same as the CircuitBreakerConfiguration does for the default registry.
+   * The EventConsumerRegistry cannot remove a consumer, so it is skipped for a bounded registry,
+   * otherwise the consumers of the evicted circuit breakers would be kept forever.
+   */
   @Bean
   public ThresholdCircuitBreakerRegistry thresholdCircuitBreakerRegistry(
-      @Qualifier("thresholdRegistryConfig") CircuitBreakerConfig config) {
-    return new ThresholdCircuitBreakerRegistry(config);
+      @Qualifier("thresholdRegistryConfig") CircuitBreakerConfig config,
+      ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+      ThresholdCircuitBreakerProperties thresholdCircuitBreakerProperties,
+      EventConsumerRegistry<CircuitBreakerEvent> eventConsumerRegistry,
+      CircuitBreakerProperties circuitBreakerProperties) {
+    Map<String, ThresholdCircuitBreakerConfig> instanceConfigs =
+        thresholdCircuitBreakerProperties.createInstanceConfigs(thresholdCircuitBreakerConfig);
+    ThresholdCircuitBreakerRegistry registry = new ThresholdCircuitBreakerRegistry(config,
+        thresholdCircuitBreakerConfig, instanceConfigs,
+        thresholdCircuitBreakerProperties.getRegistry().createRegistryConfig());
+    if (registry.isBounded()) {
+      return registry;
+    }
+    int eventConsumerBufferSize = Optional
+        .ofNullable(circuitBreakerProperties.getConfigs().get(DEFAULT_CONFIG_KEY))
+        .map(CommonCircuitBreakerConfigurationProperties.InstanceProperties::getEventConsumerBufferSize)
+        .orElse(DEFAULT_EVENT_CONSUMER_BUFFER_SIZE);
+    registry.getEventPublisher().onEntryAdded(event -> {
+      CircuitBreaker circuitBreaker = event.getAddedEntry();
+      circuitBreaker.getEventPublisher().onEvent(
+          eventConsumerRegistry.createEventConsumer(circuitBreaker.getName(), eventConsumerBufferSize));
+    });
+    return registry;
+  }
+
+  @Bean
+  public ThresholdCircuitBreakerPropertiesRefresher thresholdCircuitBreakerPropertiesRefresher(
+      ThresholdCircuitBreakerRegistry thresholdCircuitBreakerRegistry, Environment environment) {
+    return new ThresholdCircuitBreakerPropertiesRefresher(thresholdCircuitBreakerRegistry, environment,
+        DEFAULT_CONFIG_KEY);
+  }
+
+  @Bean
+  public ThresholdCircuitBreakerMeterBinder thresholdCircuitBreakerMeterBinder(
+      ThresholdCircuitBreakerRegistry thresholdCircuitBreakerRegistry) {
+    return new ThresholdCircuitBreakerMeterBinder(thresholdCircuitBreakerRegistry);
   }
 
   @Bean
@@ -0,0 +1,362 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.PackedCallCounters;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A group of ThresholdCircuitBreakers by a key, e.g. a user or a shard, which share one config
+ * and one {@link StateTransitionCalculator}. It is meant for millions of keys, where a ThresholdCircuitBreaker
+ * per key would be too large.
+ * <p>
+ * The state of a key takes 24 bytes in three flat arrays of an open addressing hash table: the key,
+ * its outcome counters packed into one long and its state, which is either CLOSED or the timestamp
+ * of the transition to OPEN. A million keys take about 50 MB. The permission and the recording are
+ * a few CAS operations on these arrays, there are no locks and no allocations.
+ * <p>
+ * The differences from a ThresholdCircuitBreaker:
+ * <ul>
+ *   <li>the sliding window is approximated with the {@link PackedCallCounters}, they cover between N and 2N
+ *   latest calls;</li>
+ *   <li>the transition rating is not cached, it is calculated from the counters, which costs the same;</li>
+ *   <li>no events are published and the not permitted calls are counted for the whole group;</li>
+ *   <li>the keys are never removed, so the group is created for the expected number of keys.</li>
+ * </ul>
+ * A key, which has not recorded any call yet, is CLOSED and does not take a slot.
+ */
+@Slf4j
+public class ThresholdCircuitBreakerGroup {
+
+  private static final long CLOSED = 0L;
+  // the key, which is the same as the empty slot marker, is kept in the extra slot at the end of the arrays
+  private static final long EMPTY_KEY = 0L;
+  private static final float MAX_LOAD_FACTOR = 0.75f;
+
+  private final String name;
+  private final CircuitBreakerConfig circuitBreakerConfig;
+  private final StateTransitionCalculator stateTransitionCalculator;
+  private final Clock clock;
+  private final int slidingWindowSize;
+  private final int minimumNumberOfCalls;
+  private final long slowCallDurationThresholdInNanos;
+  private final float failureRateThreshold;
+  private final float slowCallRateThreshold;
+
+  private final int mask;
+  private final int maxNumberOfKeys;
+  private final AtomicLongArray keys;
+  private final AtomicLongArray counters;
+  private final AtomicLongArray states;
+  // a place is reserved before the key is put into its slot, so the number of keys never exceeds the maximum
+  private final AtomicInteger numberOfReservedKeys = new AtomicInteger();
+  private final AtomicInteger numberOfKeys = new AtomicInteger();
+  private final LongAdder numberOfNotPermittedCalls = new LongAdder();
+
+  /**
+   * @param expectedNumberOfKeys the maximum number of keys, the arrays are allocated for it up front
+   */
+  public ThresholdCircuitBreakerGroup(String name,
+                                      int expectedNumberOfKeys,
+                                      CircuitBreakerConfig circuitBreakerConfig,
+                                      ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+                                      Clock clock) {
+    if (circuitBreakerConfig.getSlidingWindowSize() > PackedCallCounters.MAX_SLIDING_WINDOW_SIZE) {
+      throw new IllegalArgumentException("The sliding window size of a ThresholdCircuitBreakerGroup must not be "
+          + "greater than " + PackedCallCounters.MAX_SLIDING_WINDOW_SIZE);
+    }
+    this.name = name;
+    this.circuitBreakerConfig = Objects.requireNonNull(circuitBreakerConfig, "Config must not be null");
+    this.stateTransitionCalculator =
+        new StateTransitionCalculator(thresholdCircuitBreakerConfig.getStateTransitionParameters());
+    this.clock = clock;
+    this.slidingWindowSize = circuitBreakerConfig.getSlidingWindowSize();
+    this.minimumNumberOfCalls = Math.min(circuitBreakerConfig.getMinimumNumberOfCalls(), slidingWindowSize);
+    this.slowCallDurationThresholdInNanos = circuitBreakerConfig.getSlowCallDurationThreshold().toNanos();
+    this.failureRateThreshold = circuitBreakerConfig.getFailureRateThreshold();
+    this.slowCallRateThreshold = circuitBreakerConfig.getSlowCallRateThreshold();
+
+    // the smallest power of two, which keeps the load factor of the table below the maximum
+    int capacity = Integer.highestOneBit(Math.max(1, (int) Math.ceil(expectedNumberOfKeys / MAX_LOAD_FACTOR)) * 2 - 1);
+    this.mask = capacity - 1;
+    this.maxNumberOfKeys = expectedNumberOfKeys;
+    this.keys = new AtomicLongArray(capacity + 1);
+    this.counters = new AtomicLongArray(capacity + 1);
+    this.states = new AtomicLongArray(capacity + 1);
+  }
+
+  public ThresholdCircuitBreakerGroup(String name, int expectedNumberOfKeys,
+                                      CircuitBreakerConfig circuitBreakerConfig) {
+    this(name, expectedNumberOfKeys, circuitBreakerConfig, ThresholdCircuitBreakerConfig.ofDefaults(),
+        Clock.systemUTC());
+  }
+
+  /**
+   * A 64-bit key for a String, e.g. a user name. Two different Strings can get the same key,
+   * then they share the state, but the chance is negligible even for millions of keys.
+   */
+  public static long keyOf(String name) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < name.length(); i++) {
+      hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  public boolean tryAcquirePermission(long key) {
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return true;
+    }
+    long state = states.get(slot);
+    if (state == CLOSED) {
+      return true;
+    }
+    float transitionRating = calculateTransitionRating(slot, state);
+    if (transitionRating >= stateTransitionCalculator.getParameters().getTransitionRatingThreshold()) {
+      if (states.compareAndSet(slot, state, CLOSED)) {
+        log.debug("CircuitBreakerGroup {} key {} transition to CLOSED state", name, key);
+      }
+      return true;
+    }
+    numberOfNotPermittedCalls.increment();
+    return false;
+  }
+
+  public void onSuccess(long key, long duration, TimeUnit durationUnit) {
+    record(key, durationUnit.toNanos(duration), false);
+  }
+
+  /**
+   * Records the error with the exception predicates of the config, the same as a ThresholdCircuitBreaker does.
+   */
+  public void onError(long key, long duration, TimeUnit durationUnit, Throwable throwable) {
+    if (throwable instanceof CompletionException || throwable instanceof ExecutionException) {
+      throwable = throwable.getCause();
+    }
+    if (circuitBreakerConfig.getIgnoreExceptionPredicate().test(throwable)) {
+      return;
+    }
+    record(key, durationUnit.toNanos(duration), circuitBreakerConfig.getRecordExceptionPredicate().test(throwable));
+  }
+
+  private void record(long key, long durationInNanos, boolean isFailure) {
+    int slot = claimSlot(key);
+    long delta = PackedCallCounters.delta(isFailure, durationInNanos > slowCallDurationThresholdInNanos);
+    long current;
+    long updated;
+    do {
+      current = counters.get(slot);
+      updated = PackedCallCounters.add(current, delta, slidingWindowSize);
+    } while (!counters.compareAndSet(slot, current, updated));
+    if (states.get(slot) == CLOSED
+        && PackedCallCounters.hasExceededThresholds(updated, minimumNumberOfCalls, failureRateThreshold,
+        slowCallRateThreshold)
+        && states.compareAndSet(slot, CLOSED, openStateTimestamp())) {
+      log.debug("CircuitBreakerGroup {} key {} transition to OPEN state", name, key);
+    }
+  }
+
+  public CircuitBreaker.State getState(long key) {
+    int slot = findSlot(key);
+    return slot < 0 || states.get(slot) == CLOSED ? CircuitBreaker.State.CLOSED : CircuitBreaker.State.OPEN;
+  }
+
+  /**
+   * The current OPEN to CLOSED transition rating of the key, NaN in the CLOSED state.
+   */
+  public float getTransitionRating(long key) {
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return Float.NaN;
+    }
+    long state = states.get(slot);
+    return state == CLOSED ? Float.NaN : calculateTransitionRating(slot, state);
+  }
+
+  private float calculateTransitionRating(int slot, long state) {
+    long counter = counters.get(slot);
+    long openStateDurationInNanos = circuitBreakerConfig.getTimestampUnit()
+        .toNanos(getCurrentTimestamp() - state);
+    return stateTransitionCalculator.calculateTransitionValue(
+        getDecimalRate(counter, PackedCallCounters.getNumberOfFailedCalls(counter)),
+        getDecimalRate(counter, PackedCallCounters.getNumberOfSlowCalls(counter)),
+        getDecimalRate(counter, PackedCallCounters.getNumberOfCalls(counter)
+            - PackedCallCounters.getNumberOfFailedCalls(counter)),
+        openStateDurationInNanos);
+  }
+
+  /**
+   * The decimal failure rate of the key, 0 below the minimum number of calls, the same as in {@link SimpleMetrics}.
+   */
+  public float getDecimalFailureRate(long key) {
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return 0.0f;
+    }
+    long counter = counters.get(slot);
+    return getDecimalRate(counter, PackedCallCounters.getNumberOfFailedCalls(counter));
+  }
+
+  public float getDecimalSlowCallRate(long key) {
+    int slot = findSlot(key);
+    if (slot < 0) {
+      return 0.0f;
+    }
+    long counter = counters.get(slot);
+    return getDecimalRate(counter, PackedCallCounters.getNumberOfSlowCalls(counter));
+  }
+
+  private float getDecimalRate(long counter, long targetCalls) {
+    return PackedCallCounters.getDecimalRate(counter, targetCalls, minimumNumberOfCalls);
+  }
+
+  public void transitionToOpenState(long key) {
+    states.set(claimSlot(key), openStateTimestamp());
+  }
+
+  public void transitionToClosedState(long key) {
+    int slot = findSlot(key);
+    if (slot >= 0) {
+      states.set(slot, CLOSED);
+    }
+  }
+
+  /**
+   * Closes the key and clears its counters, the key keeps its slot.
+   */
+  public void reset(long key) {
+    int slot = findSlot(key);
+    if (slot >= 0) {
+      states.set(slot, CLOSED);
+      counters.set(slot, 0L);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public CircuitBreakerConfig getCircuitBreakerConfig() {
+    return circuitBreakerConfig;
+  }
+
+  public StateTransitionParameters getStateTransitionParameters() {
+    return stateTransitionCalculator.getParameters();
+  }
+
+  /**
+   * Replaces the transition rating parameters of all the keys without pausing the calls.
+   */
+  public void updateStateTransitionParameters(StateTransitionParameters stateTransitionParameters) {
+    log.info("CircuitBreakerGroup {} state transition parameters are updated: {}", name, stateTransitionParameters);
+    stateTransitionCalculator.setParameters(stateTransitionParameters);
+  }
+
+  /**
+   * @return the number of keys, which have recorded at least one call
+   */
+  public int getNumberOfKeys() {
+    return numberOfKeys.get();
+  }
+
+  public long getNumberOfNotPermittedCalls() {
+    return numberOfNotPermittedCalls.sum();
+  }
+
+  private long getCurrentTimestamp() {
+    return circuitBreakerConfig.getCurrentTimestampFunction().apply(clock);
+  }
+
+  // the lowest bit is set, so an OPEN state is never equal to CLOSED
+  private long openStateTimestamp() {
+    return getCurrentTimestamp() | 1L;
+  }
+
+  /**
+   * @return the slot of the key or -1, if the key has not recorded any call yet
+   */
+  private int findSlot(long key) {
+    if (key == EMPTY_KEY) {
+      return keys.get(mask + 1) != EMPTY_KEY ? mask + 1 : -1;
+    }
+    for (int slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+      long slotKey = keys.get(slot);
+      if (slotKey == key) {
+        return slot;
+      }
+      if (slotKey == EMPTY_KEY) {
+        return -1;
+      }
+    }
+  }
+
+  private int claimSlot(long key) {
+    int slot = findSlot(key);
+    if (slot >= 0) {
+      return slot;
+    }
+    if (numberOfReservedKeys.incrementAndGet() > maxNumberOfKeys) {
+      numberOfReservedKeys.decrementAndGet();
+      return findSlotOfFullGroup(key);
+    }
+    if (key == EMPTY_KEY) {
+      if (keys.compareAndSet(mask + 1, EMPTY_KEY, 1L)) {
+        numberOfKeys.incrementAndGet();
+      } else {
+        numberOfReservedKeys.decrementAndGet();
+      }
+      return mask + 1;
+    }
+    for (slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+      long slotKey = keys.get(slot);
+      if (slotKey == EMPTY_KEY) {
+        if (keys.compareAndSet(slot, EMPTY_KEY, key)) {
+          numberOfKeys.incrementAndGet();
+          return slot;
+        }
+        slotKey = keys.get(slot);
+      }
+      if (slotKey == key) {
+        // claimed by a concurrent call
+        numberOfReservedKeys.decrementAndGet();
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * The last place can be reserved by a concurrent call of the same key, which has not put it into its slot yet,
+   * so the reserved places are awaited before the group is reported full.
+   */
+  private int findSlotOfFullGroup(long key) {
+    int slot;
+    while ((slot = findSlot(key)) < 0 && numberOfReservedKeys.get() > numberOfKeys.get()) {
+      Thread.onSpinWait();
+    }
+    if (slot < 0 && (slot = findSlot(key)) < 0) {
+      throw new IllegalStateException("CircuitBreakerGroup " + name + " is full, it holds at most "
+          + maxNumberOfKeys + " keys");
+    }
+    return slot;
+  }
+
+  // the murmur3 finalizer, spreads the sequential keys over the table
+  private static long mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+}
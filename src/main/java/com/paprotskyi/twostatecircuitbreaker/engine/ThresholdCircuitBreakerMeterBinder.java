@@ -0,0 +1,120 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Registers the meters of every ThresholdCircuitBreaker in the {@link ThresholdCircuitBreakerRegistry},
+ * including the breakers created later, and removes them together with the breaker.
+ * <p>
+ * All the meters are function based: the values are read from the breaker when the registry is scraped,
+ * so nothing is added to the protected calls. The rates are the decimal ones used by the transition rating,
+ * they are 0 until the minimum number of calls is recorded.
+ */
+public class ThresholdCircuitBreakerMeterBinder implements MeterBinder {
+
+  private static final String PREFIX = "resilience4j.thresholdcircuitbreaker.";
+  private static final String NAME_TAG = "name";
+  private static final String STATE_TAG = "state";
+  private static final String QUANTILE_TAG = "quantile";
+  private static final double[] LATENCY_QUANTILES = {0.5, 0.95, 0.99};
+
+  private final ThresholdCircuitBreakerRegistry circuitBreakerRegistry;
+  private final Map<String, List<Meter.Id>> meterIdsByCircuitBreaker = new ConcurrentHashMap<>();
+
+  public ThresholdCircuitBreakerMeterBinder(ThresholdCircuitBreakerRegistry circuitBreakerRegistry) {
+    this.circuitBreakerRegistry = circuitBreakerRegistry;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry meterRegistry) {
+    circuitBreakerRegistry.getEventPublisher()
+        .onEntryAdded(event -> addMeters(meterRegistry, event.getAddedEntry()))
+        .onEntryRemoved(event -> removeMeters(meterRegistry, event.getRemovedEntry().getName()))
+        .onEntryReplaced(event -> {
+          removeMeters(meterRegistry, event.getOldEntry().getName());
+          addMeters(meterRegistry, event.getNewEntry());
+        });
+    circuitBreakerRegistry.getCircuitBreakersView().forEach(circuitBreaker -> addMeters(meterRegistry, circuitBreaker));
+  }
+
+  private void addMeters(MeterRegistry meterRegistry, CircuitBreaker circuitBreaker) {
+    if (!(circuitBreaker instanceof ThresholdCircuitBreaker thresholdCircuitBreaker)) {
+      return;
+    }
+    String name = thresholdCircuitBreaker.getName();
+    List<Meter.Id> meterIds = new ArrayList<>();
+    for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+      meterIds.add(Gauge.builder(PREFIX + STATE_TAG, thresholdCircuitBreaker,
+              breaker -> breaker.getState() == state ? 1 : 0)
+          .description("The states of the circuit breaker, 1 for the current one")
+          .tag(NAME_TAG, name)
+          .tag(STATE_TAG, state.name().toLowerCase())
+          .register(meterRegistry).getId());
+    }
+    meterIds.add(Gauge.builder(PREFIX + "transition.rating", thresholdCircuitBreaker,
+            ThresholdCircuitBreaker::getTransitionRating)
+        .description("The OPEN to CLOSED transition rating, NaN in the CLOSED state")
+        .tag(NAME_TAG, name)
+        .register(meterRegistry).getId());
+    meterIds.add(registerRateGauge(meterRegistry, thresholdCircuitBreaker, "failure.rate",
+        SimpleMetrics::getDecimalFailureRate, "The decimal failure rate of the sliding window"));
+    meterIds.add(registerRateGauge(meterRegistry, thresholdCircuitBreaker, "slow.call.rate",
+        SimpleMetrics::getDecimalSlowCallRate, "The decimal slow call rate of the sliding window"));
+    meterIds.add(registerRateGauge(meterRegistry, thresholdCircuitBreaker, "success.rate",
+        SimpleMetrics::getDecimalSuccessRate, "The decimal success rate of the sliding window"));
+    for (double quantile : LATENCY_QUANTILES) {
+      meterIds.add(Gauge.builder(PREFIX + "latency", thresholdCircuitBreaker,
+              breaker -> breaker.getMetrics().getLatencyQuantileInNanos(quantile) / 1e9)
+          .description("The latency quantiles of the calls during the latency quantile window")
+          .baseUnit("seconds")
+          .tag(NAME_TAG, name)
+          .tag(QUANTILE_TAG, String.valueOf(quantile))
+          .register(meterRegistry).getId());
+    }
+    meterIds.add(Gauge.builder(PREFIX + "slow.call.duration.threshold", thresholdCircuitBreaker,
+            breaker -> breaker.getMetrics().getSlowCallDurationThresholdInNanos() / 1e9)
+        .description("The current slow call threshold, either the fixed or the adaptive one")
+        .baseUnit("seconds")
+        .tag(NAME_TAG, name)
+        .register(meterRegistry).getId());
+    meterIds.add(FunctionCounter.builder(PREFIX + "not.permitted.calls", thresholdCircuitBreaker,
+            breaker -> breaker.getMetrics().getNumberOfNotPermittedCalls())
+        .description("The number of calls not permitted in the OPEN state")
+        .tag(NAME_TAG, name)
+        .register(meterRegistry).getId());
+    meterIds.add(FunctionCounter.builder(PREFIX + "events.dropped", thresholdCircuitBreaker,
+            breaker -> breaker.getEventPublisher().getNumberOfDroppedEvents())
+        .description("The number of events dropped, because the event buffer was full")
+        .tag(NAME_TAG, name)
+        .register(meterRegistry).getId());
+    meterIdsByCircuitBreaker.put(name, meterIds);
+  }
+
+  private static Meter.Id registerRateGauge(MeterRegistry meterRegistry, ThresholdCircuitBreaker circuitBreaker,
+                                            String meterName, ToDoubleFunction<SimpleMetrics> rate,
+                                            String description) {
+    return Gauge.builder(PREFIX + meterName, circuitBreaker,
+            breaker -> rate.applyAsDouble(breaker.getMetrics()))
+        .description(description)
+        .tag(NAME_TAG, circuitBreaker.getName())
+        .register(meterRegistry).getId();
+  }
+
+  private void removeMeters(MeterRegistry meterRegistry, String circuitBreakerName) {
+    List<Meter.Id> meterIds = meterIdsByCircuitBreaker.remove(circuitBreakerName);
+    if (meterIds != null) {
+      meterIds.forEach(meterRegistry::remove);
+    }
+  }
+}
@@ -0,0 +1,210 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The ThresholdCircuitBreaker specific properties, which are kept next to the resilience4j.circuitbreaker ones.
+ * Only the "default" config is used, the same as for the {@link ThresholdCircuitBreakerConfiguration}.
+ * The "instances" override the default config for the circuit breakers with the same name.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "resilience4j.thresholdcircuitbreaker")
+public class ThresholdCircuitBreakerProperties {
+
+  private Map<String, InstanceProperties> configs = new HashMap<>();
+
+  private Map<String, InstanceProperties> instances = new HashMap<>();
+
+  private RegistryProperties registry = new RegistryProperties();
+
+  public ThresholdCircuitBreakerConfig createThresholdCircuitBreakerConfig(String configName) {
+    InstanceProperties instanceProperties = configs.get(configName);
+    if (instanceProperties == null) {
+      return ThresholdCircuitBreakerConfig.ofDefaults();
+    }
+    return instanceProperties.applyTo(ThresholdCircuitBreakerConfig.ofDefaults());
+  }
+
+  /**
+   * Creates the configs of all the "instances" on top of the given default config.
+   */
+  public Map<String, ThresholdCircuitBreakerConfig> createInstanceConfigs(ThresholdCircuitBreakerConfig defaultConfig) {
+    Map<String, ThresholdCircuitBreakerConfig> instanceConfigs = new HashMap<>();
+    instances.forEach((name, instanceProperties) ->
+        instanceConfigs.put(name, instanceProperties.applyTo(defaultConfig)));
+    return instanceConfigs;
+  }
+
+  /**
+   * The bounds of the registry, see the {@link ThresholdCircuitBreakerRegistryConfig}.
+   */
+  @Getter
+  @Setter
+  public static class RegistryProperties {
+
+    private Integer maxSize;
+
+    private Duration idleTimeout;
+
+    private Path snapshotFile;
+
+    private Integer snapshotCapacity;
+
+    private Duration snapshotInterval;
+
+    private Duration snapshotMaxAge;
+
+    private Path sharedStateFile;
+
+    private Integer sharedStateCapacity;
+
+    private Duration transitionEvaluationInterval;
+
+    public ThresholdCircuitBreakerRegistryConfig createRegistryConfig() {
+      ThresholdCircuitBreakerRegistryConfig.ThresholdCircuitBreakerRegistryConfigBuilder builder =
+          ThresholdCircuitBreakerRegistryConfig.builder();
+      if (maxSize != null) {
+        builder.maxSize(maxSize);
+      }
+      if (idleTimeout != null) {
+        builder.idleTimeout(idleTimeout);
+      }
+      if (snapshotFile != null) {
+        builder.snapshotFile(snapshotFile);
+      }
+      if (snapshotCapacity != null) {
+        builder.snapshotCapacity(snapshotCapacity);
+      }
+      if (snapshotInterval != null) {
+        builder.snapshotInterval(snapshotInterval);
+      }
+      if (snapshotMaxAge != null) {
+        builder.snapshotMaxAge(snapshotMaxAge);
+      }
+      if (sharedStateFile != null) {
+        builder.sharedStateFile(sharedStateFile);
+      }
+      if (sharedStateCapacity != null) {
+        builder.sharedStateCapacity(sharedStateCapacity);
+      }
+      if (transitionEvaluationInterval != null) {
+        builder.transitionEvaluationInterval(transitionEvaluationInterval);
+      }
+      return builder.build();
+    }
+  }
+
+  @Getter
+  @Setter
+  public static class InstanceProperties {
+
+    private ThresholdCircuitBreakerConfig.SlidingWindowImplementation slidingWindowImplementation;
+
+    private Duration transitionRatingRefreshQuantum;
+
+    private Integer eventBufferSize;
+
+    private StateTransitionProperties stateTransition;
+
+    private TransitionPolicy.BuiltIn transitionPolicy;
+
+    private Duration latencyQuantileWindow;
+
+    private Float adaptiveSlowCallDurationMultiplier;
+
+    private Float callTimeoutMultiplier;
+
+    private Duration rampUpDuration;
+
+    private Boolean exceptionVerdictCached;
+
+    /**
+     * @return the base config with the fields set in these properties replaced
+     */
+    ThresholdCircuitBreakerConfig applyTo(ThresholdCircuitBreakerConfig baseConfig) {
+      ThresholdCircuitBreakerConfig.ThresholdCircuitBreakerConfigBuilder builder = baseConfig.toBuilder();
+      if (slidingWindowImplementation != null) {
+        builder.slidingWindowImplementation(slidingWindowImplementation);
+      }
+      if (transitionRatingRefreshQuantum != null) {
+        builder.transitionRatingRefreshQuantum(transitionRatingRefreshQuantum);
+      }
+      if (eventBufferSize != null) {
+        builder.eventBufferSize(eventBufferSize);
+      }
+      if (transitionPolicy != null) {
+        builder.transitionPolicy(transitionPolicy);
+      }
+      if (latencyQuantileWindow != null) {
+        builder.latencyQuantileWindow(latencyQuantileWindow);
+      }
+      if (adaptiveSlowCallDurationMultiplier != null) {
+        builder.adaptiveSlowCallDurationMultiplier(adaptiveSlowCallDurationMultiplier);
+      }
+      if (callTimeoutMultiplier != null) {
+        builder.callTimeoutMultiplier(callTimeoutMultiplier);
+      }
+      if (rampUpDuration != null) {
+        builder.rampUpDuration(rampUpDuration);
+      }
+      if (exceptionVerdictCached != null) {
+        builder.exceptionVerdictCached(exceptionVerdictCached);
+      }
+      if (stateTransition != null) {
+        builder.stateTransitionParameters(stateTransition.applyTo(baseConfig.getStateTransitionParameters()));
+      }
+      return builder.build();
+    }
+  }
+
+  /**
+   * The properties of the {@link StateTransitionParameters}, which can be changed on the running breakers.
+   */
+  @Getter
+  @Setter
+  public static class StateTransitionProperties {
+
+    private Float slowCallRateCoefficient;
+
+    private Float failureRateCoefficient;
+
+    private Float successCallRateCoefficient;
+
+    private Float timeInOpenStateCoefficient;
+
+    private Duration openStateDurationThreshold;
+
+    private Float transitionRatingThreshold;
+
+    StateTransitionParameters applyTo(StateTransitionParameters baseParameters) {
+      StateTransitionParameters.StateTransitionParametersBuilder builder = baseParameters.toBuilder();
+      if (slowCallRateCoefficient != null) {
+        builder.slowCallRateCoefficient(slowCallRateCoefficient);
+      }
+      if (failureRateCoefficient != null) {
+        builder.failureRateCoefficient(failureRateCoefficient);
+      }
+      if (successCallRateCoefficient != null) {
+        builder.successCallRateCoefficient(successCallRateCoefficient);
+      }
+      if (timeInOpenStateCoefficient != null) {
+        builder.timeInOpenStateCoefficient(timeInOpenStateCoefficient);
+      }
+      if (openStateDurationThreshold != null) {
+        builder.openStateDurationThreshold(openStateDurationThreshold);
+      }
+      if (transitionRatingThreshold != null) {
+        builder.transitionRatingThreshold(transitionRatingThreshold);
+      }
+      return builder.build();
+    }
+  }
+}
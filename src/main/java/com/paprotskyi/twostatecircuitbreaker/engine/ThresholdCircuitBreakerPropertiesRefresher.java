@@ -0,0 +1,58 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.BindException;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The refresh hook of the ThresholdCircuitBreaker properties: when they are changed in the environment
+ * (e.g. by the /actuator/refresh endpoint), they are bound again and passed to the
+ * {@link ThresholdCircuitBreakerRegistry}, which applies the new state transition parameters to the running breakers.
+ * The properties are bound here instead of reading the rebound properties bean, which can be rebound after this.
+ * The invalid properties are not applied, the breakers keep the previous configs.
+ */
+@Slf4j
+public class ThresholdCircuitBreakerPropertiesRefresher implements ApplicationListener<EnvironmentChangeEvent> {
+
+  private static final String PREFIX = "resilience4j.thresholdcircuitbreaker";
+
+  private final ThresholdCircuitBreakerRegistry circuitBreakerRegistry;
+  private final Environment environment;
+  private final String defaultConfigName;
+
+  public ThresholdCircuitBreakerPropertiesRefresher(ThresholdCircuitBreakerRegistry circuitBreakerRegistry,
+                                                    Environment environment,
+                                                    String defaultConfigName) {
+    this.circuitBreakerRegistry = circuitBreakerRegistry;
+    this.environment = environment;
+    this.defaultConfigName = defaultConfigName;
+  }
+
+  @Override
+  public void onApplicationEvent(EnvironmentChangeEvent event) {
+    boolean isChanged = event.getKeys().stream()
+        .anyMatch(key -> key.toLowerCase(Locale.ROOT).startsWith(PREFIX));
+    if (!isChanged) {
+      return;
+    }
+    ThresholdCircuitBreakerConfig defaultConfig;
+    Map<String, ThresholdCircuitBreakerConfig> instanceConfigs;
+    try {
+      ThresholdCircuitBreakerProperties properties = Binder.get(environment)
+          .bindOrCreate(PREFIX, ThresholdCircuitBreakerProperties.class);
+      defaultConfig = properties.createThresholdCircuitBreakerConfig(defaultConfigName);
+      instanceConfigs = properties.createInstanceConfigs(defaultConfig);
+    } catch (BindException | IllegalArgumentException e) {
+      log.warn("The refreshed ThresholdCircuitBreaker configs are invalid, keeping the previous ones", e);
+      return;
+    }
+    log.info("Refreshing the ThresholdCircuitBreaker configs");
+    circuitBreakerRegistry.updateThresholdCircuitBreakerConfigs(defaultConfig, instanceConfigs);
+  }
+}
@@ -1,24 +1,84 @@
 package com.paprotskyi.twostatecircuitbreaker.engine;
 
+import com.paprotskyi.twostatecircuitbreaker.engine.event.CircuitBreakerEvictedEvent;
+import com.paprotskyi.twostatecircuitbreaker.engine.persistence.MappedSnapshotStore;
+import com.paprotskyi.twostatecircuitbreaker.engine.persistence.PersistedCircuitBreakerState;
+import com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedCircuitBreakerState;
+import com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedStateRegion;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.EventConsumer;
+import io.github.resilience4j.core.lang.Nullable;
 import io.github.resilience4j.core.registry.AbstractRegistry;
+import lombok.extern.slf4j.Slf4j;
 
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
 import static java.util.Collections.emptyMap;
 
 /**
  * This class is the alternative registry for creating and holding ThresholdCircuitBreaker objects.
+ * <p>
+ * The registry can be bounded with a {@link ThresholdCircuitBreakerRegistryConfig}, then the circuit breakers are
+ * evicted when the registry is above its maximum size or when they have not been looked up for the idle timeout.
+ * There is no background sweep: the lookups do the maintenance in small steps, each one checks only a few
+ * circuit breakers from a cursor, which goes around the registry. The least recently used circuit breaker
+ * is approximated with the oldest one from a small sample, the same as Redis does.
+ * <p>
+ * With a snapshot file, the states of the circuit breakers are written to it periodically and a circuit breaker
+ * is created with its persisted state, if there is a recent one. So after a restart the circuit breakers
+ * of the unhealthy dependencies are still OPEN and their sliding windows are not empty.
+ * <p>
+ * With a shared state file, the circuit breakers share their state with the circuit breakers of the same name
+ * in the other JVMs on the host, which map the same file.
+ * <p>
+ * With a transition evaluation interval, a single background thread sweeps the circuit breakers
+ * and evaluates the OPEN ones, see {@link ThresholdCircuitBreaker#evaluateTransition()}.
  */
+@Slf4j
 public class ThresholdCircuitBreakerRegistry extends
-    AbstractRegistry<CircuitBreaker, CircuitBreakerConfig> implements CircuitBreakerRegistry {
+    AbstractRegistry<CircuitBreaker, CircuitBreakerConfig> implements CircuitBreakerRegistry, AutoCloseable {
+
+  //one lookup of this many does the idle check, unless the registry is above its maximum size
+  private static final int MAINTENANCE_SAMPLING = 64;
+  private static final int IDLE_CHECKS_PER_MAINTENANCE = 16;
+  private static final int EVICTION_SAMPLE_SIZE = 8;
+
+  private volatile ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig;
+  private volatile Map<String, ThresholdCircuitBreakerConfig> instanceThresholdCircuitBreakerConfigs;
+  private final ThresholdCircuitBreakerRegistryConfig registryConfig;
+  private final AccessTrackingRegistryStore store;
+  private final List<EventConsumer<CircuitBreakerEvictedEvent>> evictionConsumers = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean isMaintenanceRunning = new AtomicBoolean();
+  //only used by the thread, which runs the maintenance
+  private Iterator<Map.Entry<String, AccessTrackingRegistryStore.Entry>> maintenanceCursor =
+      Collections.emptyIterator();
+  @Nullable
+  private final MappedSnapshotStore snapshotStore;
+  @Nullable
+  private final ScheduledExecutorService snapshotScheduler;
+  @Nullable
+  private final SharedStateRegion sharedStateRegion;
+  @Nullable
+  private final ScheduledExecutorService transitionEvaluator;
 
   /**
    * The constructor with custom default config.
@@ -26,7 +86,174 @@ public class ThresholdCircuitBreakerRegistry extends
    * @param defaultConfig The default config.
    */
   public ThresholdCircuitBreakerRegistry(CircuitBreakerConfig defaultConfig) {
-    super(defaultConfig);
+    this(defaultConfig, ThresholdCircuitBreakerConfig.ofDefaults());
+  }
+
+  /**
+   * The constructor with custom default config and the ThresholdCircuitBreaker specific settings.
+   *
+   * @param defaultConfig                 The default config.
+   * @param thresholdCircuitBreakerConfig The settings shared by all the created circuit breakers.
+   */
+  public ThresholdCircuitBreakerRegistry(CircuitBreakerConfig defaultConfig,
+                                         ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig) {
+    this(defaultConfig, thresholdCircuitBreakerConfig, emptyMap());
+  }
+
+  /**
+   * The constructor with custom default config and the ThresholdCircuitBreaker specific settings,
+   * which can be overridden for the circuit breakers by their names.
+   *
+   * @param defaultConfig                          The default config.
+   * @param thresholdCircuitBreakerConfig          The default ThresholdCircuitBreaker settings.
+   * @param instanceThresholdCircuitBreakerConfigs The ThresholdCircuitBreaker settings by the circuit breaker names.
+   */
+  public ThresholdCircuitBreakerRegistry(
+      CircuitBreakerConfig defaultConfig,
+      ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+      Map<String, ThresholdCircuitBreakerConfig> instanceThresholdCircuitBreakerConfigs) {
+    this(defaultConfig, thresholdCircuitBreakerConfig, instanceThresholdCircuitBreakerConfigs,
+        ThresholdCircuitBreakerRegistryConfig.ofDefaults());
+  }
+
+  /**
+   * The constructor with all the settings, including the bounds of the registry.
+   *
+   * @param defaultConfig                          The default config.
+   * @param thresholdCircuitBreakerConfig          The default ThresholdCircuitBreaker settings.
+   * @param instanceThresholdCircuitBreakerConfigs The ThresholdCircuitBreaker settings by the circuit breaker names.
+   * @param registryConfig                         The settings of the registry.
+   */
+  public ThresholdCircuitBreakerRegistry(
+      CircuitBreakerConfig defaultConfig,
+      ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+      Map<String, ThresholdCircuitBreakerConfig> instanceThresholdCircuitBreakerConfigs,
+      ThresholdCircuitBreakerRegistryConfig registryConfig) {
+    this(defaultConfig, thresholdCircuitBreakerConfig, instanceThresholdCircuitBreakerConfigs, registryConfig,
+        new AccessTrackingRegistryStore(registryConfig.isBounded()));
+  }
+
+  private ThresholdCircuitBreakerRegistry(
+      CircuitBreakerConfig defaultConfig,
+      ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+      Map<String, ThresholdCircuitBreakerConfig> instanceThresholdCircuitBreakerConfigs,
+      ThresholdCircuitBreakerRegistryConfig registryConfig,
+      AccessTrackingRegistryStore store) {
+    super(defaultConfig, new ArrayList<>(), emptyMap(), store);
+    this.thresholdCircuitBreakerConfig = Objects
+        .requireNonNull(thresholdCircuitBreakerConfig, CONFIG_MUST_NOT_BE_NULL);
+    this.instanceThresholdCircuitBreakerConfigs = Map.copyOf(instanceThresholdCircuitBreakerConfigs);
+    this.registryConfig = registryConfig;
+    this.store = store;
+    if (registryConfig.getSnapshotFile() != null) {
+      this.snapshotStore = new MappedSnapshotStore(registryConfig.getSnapshotFile(),
+          registryConfig.getSnapshotCapacity());
+      this.snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "threshold-circuit-breaker-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long snapshotIntervalInMillis = registryConfig.getSnapshotInterval().toMillis();
+      snapshotScheduler.scheduleWithFixedDelay(this::writeSnapshot, snapshotIntervalInMillis,
+          snapshotIntervalInMillis, TimeUnit.MILLISECONDS);
+    } else {
+      this.snapshotStore = null;
+      this.snapshotScheduler = null;
+    }
+    this.sharedStateRegion = registryConfig.getSharedStateFile() != null
+        ? new SharedStateRegion(registryConfig.getSharedStateFile(), registryConfig.getSharedStateCapacity())
+        : null;
+    if (!registryConfig.getTransitionEvaluationInterval().isZero()) {
+      this.transitionEvaluator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "threshold-circuit-breaker-evaluator");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long evaluationIntervalInNanos = registryConfig.getTransitionEvaluationInterval().toNanos();
+      transitionEvaluator.scheduleWithFixedDelay(this::evaluateTransitions, evaluationIntervalInNanos,
+          evaluationIntervalInNanos, TimeUnit.NANOSECONDS);
+    } else {
+      this.transitionEvaluator = null;
+    }
+  }
+
+  public ThresholdCircuitBreakerRegistryConfig getRegistryConfig() {
+    return registryConfig;
+  }
+
+  /**
+   * @return true if the circuit breakers can be evicted, so they should be looked up instead of being kept
+   */
+  public boolean isBounded() {
+    return registryConfig.isBounded();
+  }
+
+  /**
+   * Subscribes to the evictions of a bounded registry. The consumers are called by the thread,
+   * which does the maintenance on a lookup.
+   */
+  public ThresholdCircuitBreakerRegistry onEntryEvicted(EventConsumer<CircuitBreakerEvictedEvent> eventConsumer) {
+    evictionConsumers.add(Objects.requireNonNull(eventConsumer, CONSUMER_MUST_NOT_BE_NULL));
+    return this;
+  }
+
+  /**
+   * @return the ThresholdCircuitBreaker settings, which are used for the circuit breaker with the given name
+   */
+  public ThresholdCircuitBreakerConfig getThresholdCircuitBreakerConfig(String name) {
+    return instanceThresholdCircuitBreakerConfigs.getOrDefault(name, thresholdCircuitBreakerConfig);
+  }
+
+  /**
+   * Replaces the ThresholdCircuitBreaker settings. The new settings are used for the circuit breakers created later,
+   * and the state transition parameters are also applied to the existing ones, without pausing their calls.
+   * The other settings of the existing circuit breakers are not changed.
+   */
+  public void updateThresholdCircuitBreakerConfigs(
+      ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig,
+      Map<String, ThresholdCircuitBreakerConfig> instanceThresholdCircuitBreakerConfigs) {
+    this.thresholdCircuitBreakerConfig = Objects
+        .requireNonNull(thresholdCircuitBreakerConfig, CONFIG_MUST_NOT_BE_NULL);
+    this.instanceThresholdCircuitBreakerConfigs = Map.copyOf(instanceThresholdCircuitBreakerConfigs);
+    for (CircuitBreaker circuitBreaker : entryMap.values()) {
+      if (circuitBreaker instanceof ThresholdCircuitBreaker thresholdCircuitBreaker) {
+        StateTransitionParameters stateTransitionParameters =
+            getThresholdCircuitBreakerConfig(circuitBreaker.getName()).getStateTransitionParameters();
+        if (!stateTransitionParameters.equals(thresholdCircuitBreaker.getStateTransitionParameters())) {
+          thresholdCircuitBreaker.updateStateTransitionParameters(stateTransitionParameters);
+        }
+      }
+    }
+  }
+
+  /**
+   * Switches a circuit breaker to another state at runtime, e.g. to FORCED_OPEN to shed all its calls during
+   * an incident, to DISABLED to bypass it, to METRICS_ONLY to keep recording without opening it, or back to CLOSED.
+   * The circuit breaker stays in the state until the next switch, but an evicted one is created again as CLOSED.
+   * A switch to the current state enters it again, e.g. OPEN starts a new OPEN period, and publishes the transition.
+   *
+   * @return false if there is no circuit breaker with this name
+   * @throws IllegalArgumentException if the state is HALF_OPEN, which a threshold circuit breaker does not have
+   * @throws io.github.resilience4j.circuitbreaker.IllegalStateTransitionException if the circuit breaker cannot be
+   *     switched from its current state, i.e. from METRICS_ONLY to OPEN
+   */
+  public boolean transitionState(String name, CircuitBreaker.State state) {
+    if (state == CircuitBreaker.State.HALF_OPEN) {
+      throw new IllegalArgumentException("A threshold circuit breaker cannot be switched to HALF_OPEN state");
+    }
+    Optional<CircuitBreaker> circuitBreaker = find(name);
+    circuitBreaker.ifPresent(breaker -> {
+      log.info("Switching circuit breaker '{}' to {} state", name, state);
+      switch (state) {
+        case CLOSED -> breaker.transitionToClosedState();
+        case OPEN -> breaker.transitionToOpenState();
+        case FORCED_OPEN -> breaker.transitionToForcedOpenState();
+        case DISABLED -> breaker.transitionToDisabledState();
+        case METRICS_ONLY -> breaker.transitionToMetricsOnlyState();
+        default -> throw new IllegalArgumentException("Unexpected state " + state);
+      }
+    });
+    return circuitBreaker.isPresent();
   }
 
   /**
@@ -37,6 +264,14 @@ public class ThresholdCircuitBreakerRegistry extends
     return new HashSet<>(entryMap.values());
   }
 
+  /**
+   * A live read-only view of the circuit breakers, which is not copied unlike {@link #getAllCircuitBreakers()}.
+   * It can be iterated concurrently with the changes of the registry, the same as a ConcurrentHashMap.
+   */
+  public Collection<CircuitBreaker> getCircuitBreakersView() {
+    return Collections.unmodifiableCollection(entryMap.values());
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -61,8 +296,170 @@ public class ThresholdCircuitBreakerRegistry extends
   @Override
   public CircuitBreaker circuitBreaker(String name, CircuitBreakerConfig config,
                                        Map<String, String> tags) {
-    return computeIfAbsent(name, () -> new ThresholdCircuitBreaker(
-        name, Clock.systemUTC(), Objects.requireNonNull(config, CONFIG_MUST_NOT_BE_NULL)));
+    CircuitBreaker circuitBreaker = computeIfAbsent(name, () -> createCircuitBreaker(name, config));
+    if (registryConfig.isBounded()) {
+      performMaintenance();
+    }
+    return circuitBreaker;
+  }
+
+  private ThresholdCircuitBreaker createCircuitBreaker(String name, CircuitBreakerConfig config) {
+    ThresholdCircuitBreaker circuitBreaker = new ThresholdCircuitBreaker(
+        name, Clock.systemUTC(), Objects.requireNonNull(config, CONFIG_MUST_NOT_BE_NULL),
+        getThresholdCircuitBreakerConfig(name), getSharedState(name),
+        registryConfig.getTransitionEvaluationInterval());
+    if (snapshotStore != null) {
+      long oldestUpdateInEpochMillis = System.currentTimeMillis() - registryConfig.getSnapshotMaxAge().toMillis();
+      snapshotStore.read(name)
+          .filter(persistedState -> persistedState.updatedAtEpochMillis() >= oldestUpdateInEpochMillis)
+          .ifPresent(circuitBreaker::restoreState);
+    }
+    return circuitBreaker;
+  }
+
+  @Nullable
+  private SharedCircuitBreakerState getSharedState(String name) {
+    if (sharedStateRegion == null) {
+      return null;
+    }
+    SharedCircuitBreakerState sharedState = sharedStateRegion.stateOf(name);
+    if (sharedState == null) {
+      log.warn("The state of circuit breaker '{}' is not shared, the shared state file is full", name);
+    }
+    return sharedState;
+  }
+
+  /**
+   * Writes the states of all the circuit breakers to the snapshot file, if there is one.
+   */
+  public void writeSnapshot() {
+    if (snapshotStore == null) {
+      return;
+    }
+    try {
+      for (CircuitBreaker circuitBreaker : entryMap.values()) {
+        if (circuitBreaker instanceof ThresholdCircuitBreaker thresholdCircuitBreaker) {
+          PersistedCircuitBreakerState persistedState = thresholdCircuitBreaker.getPersistedState();
+          if (!snapshotStore.write(circuitBreaker.getName(), persistedState)) {
+            log.debug("The state of circuit breaker '{}' is not persisted", circuitBreaker.getName());
+          }
+        }
+      }
+    } catch (RuntimeException e) {
+      //the next snapshot is still written
+      log.warn("Failed to write the circuit breaker snapshot", e);
+    }
+  }
+
+  /**
+   * Evaluates all the OPEN circuit breakers, the CLOSED ones are skipped at the cost of a volatile read.
+   */
+  private void evaluateTransitions() {
+    try {
+      for (CircuitBreaker circuitBreaker : entryMap.values()) {
+        if (circuitBreaker instanceof ThresholdCircuitBreaker thresholdCircuitBreaker) {
+          thresholdCircuitBreaker.evaluateTransition();
+        }
+      }
+    } catch (RuntimeException e) {
+      //the next sweep is still run
+      log.warn("Failed to evaluate the circuit breaker transitions", e);
+    }
+  }
+
+  /**
+   * Stops the background evaluation and the periodic snapshots, and writes the last snapshot.
+   */
+  @Override
+  public void close() {
+    if (transitionEvaluator != null) {
+      transitionEvaluator.shutdownNow();
+    }
+    if (snapshotStore == null) {
+      return;
+    }
+    snapshotScheduler.shutdownNow();
+    writeSnapshot();
+    snapshotStore.force();
+  }
+
+  /**
+   * Evicts a few idle circuit breakers and, when the registry is above its maximum size,
+   * a few least recently used ones. Only one thread does it at a time, the others just skip it.
+   */
+  private void performMaintenance() {
+    int maxSize = registryConfig.getMaxSize();
+    boolean isAboveMaxSize = maxSize > 0 && store.size() > maxSize;
+    if (!isAboveMaxSize && ThreadLocalRandom.current().nextInt(MAINTENANCE_SAMPLING) != 0) {
+      return;
+    }
+    if (!isMaintenanceRunning.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long now = System.nanoTime();
+      if (!registryConfig.getIdleTimeout().isZero()) {
+        evictIdleCircuitBreakers(now);
+      }
+      //the overshoot left by the lookups, which skipped the maintenance, is evicted at once,
+      //so every created circuit breaker is evicted at most once and the cost stays amortized
+      int numberOfEvictions = maxSize > 0 ? store.size() - maxSize : 0;
+      for (int i = 0; i < numberOfEvictions; i++) {
+        evictLeastRecentlyUsedCircuitBreaker();
+      }
+    } finally {
+      isMaintenanceRunning.set(false);
+    }
+  }
+
+  private void evictIdleCircuitBreakers(long now) {
+    long idleTimeoutInNanos = registryConfig.getIdleTimeout().toNanos();
+    for (int i = 0; i < IDLE_CHECKS_PER_MAINTENANCE; i++) {
+      Map.Entry<String, AccessTrackingRegistryStore.Entry> entry = nextMaintenanceEntry();
+      if (entry == null) {
+        return;
+      }
+      if (now - entry.getValue().lastAccessNanos > idleTimeoutInNanos) {
+        evict(entry.getKey(), entry.getValue(), CircuitBreakerEvictedEvent.EvictionCause.IDLE);
+      }
+    }
+  }
+
+  private void evictLeastRecentlyUsedCircuitBreaker() {
+    Map.Entry<String, AccessTrackingRegistryStore.Entry> oldest = null;
+    for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+      Map.Entry<String, AccessTrackingRegistryStore.Entry> entry = nextMaintenanceEntry();
+      if (entry == null) {
+        break;
+      }
+      if (oldest == null || entry.getValue().lastAccessNanos - oldest.getValue().lastAccessNanos < 0) {
+        oldest = entry;
+      }
+    }
+    if (oldest != null) {
+      evict(oldest.getKey(), oldest.getValue(), CircuitBreakerEvictedEvent.EvictionCause.SIZE);
+    }
+  }
+
+  private Map.Entry<String, AccessTrackingRegistryStore.Entry> nextMaintenanceEntry() {
+    if (!maintenanceCursor.hasNext()) {
+      maintenanceCursor = store.entryIterator();
+      if (!maintenanceCursor.hasNext()) {
+        return null;
+      }
+    }
+    return maintenanceCursor.next();
+  }
+
+  private void evict(String name, AccessTrackingRegistryStore.Entry entry,
+                     CircuitBreakerEvictedEvent.EvictionCause cause) {
+    //the entry could be already removed or replaced by the time the cursor gets to it,
+    //so it is removed only if it is still the same, and the registry publishes the removal event
+    store.remove(name, entry, this::remove).ifPresent(circuitBreaker -> {
+      log.debug("Evicted circuit breaker '{}', cause: {}", name, cause);
+      CircuitBreakerEvictedEvent event = new CircuitBreakerEvictedEvent(circuitBreaker, cause);
+      evictionConsumers.forEach(consumer -> consumer.consumeEvent(event));
+    });
   }
 
   /**
@@ -0,0 +1,88 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The settings of the {@link ThresholdCircuitBreakerRegistry} itself, which are not related to any circuit breaker.
+ * By default, the registry is unbounded and keeps every created circuit breaker.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ThresholdCircuitBreakerRegistryConfig {
+
+  /**
+   * The maximum number of circuit breakers, the least recently used ones are evicted above it.
+   * Zero means no limit.
+   */
+  @Builder.Default
+  int maxSize = 0;
+
+  /**
+   * The circuit breakers, which have not been looked up in the registry for longer, are evicted.
+   * Zero means they are never evicted for being idle.
+   */
+  @Builder.Default
+  Duration idleTimeout = Duration.ZERO;
+
+  /**
+   * The memory-mapped file, where the states of the circuit breakers are persisted and restored from after
+   * a restart, see the {@link com.paprotskyi.twostatecircuitbreaker.engine.persistence.MappedSnapshotStore}.
+   * Null means the states are not persisted.
+   */
+  Path snapshotFile;
+
+  /**
+   * The maximum number of the circuit breakers in the snapshot file.
+   */
+  @Builder.Default
+  int snapshotCapacity = 4096;
+
+  /**
+   * How often the states are written to the snapshot file, they are also written when the registry is closed.
+   */
+  @Builder.Default
+  Duration snapshotInterval = Duration.ofSeconds(1);
+
+  /**
+   * The older persisted states are not restored, as they do not tell much about the current one.
+   */
+  @Builder.Default
+  Duration snapshotMaxAge = Duration.ofMinutes(5);
+
+  /**
+   * The memory-mapped file, which is shared by the JVMs of the same service on a host, so their circuit breakers
+   * with the same name are opened and closed together, see the
+   * {@link com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedStateRegion}.
+   * Null means the states are not shared.
+   */
+  Path sharedStateFile;
+
+  /**
+   * The maximum number of the circuit breaker names in a new shared state file.
+   */
+  @Builder.Default
+  int sharedStateCapacity = 4096;
+
+  /**
+   * How often a single background thread evaluates the OPEN circuit breakers, so the calls only read
+   * the evaluated transition ratings and the idle circuit breakers are closed as well.
+   * Zero means the ratings are calculated by the calls.
+   */
+  @Builder.Default
+  Duration transitionEvaluationInterval = Duration.ZERO;
+
+  public static ThresholdCircuitBreakerRegistryConfig ofDefaults() {
+    return ThresholdCircuitBreakerRegistryConfig.builder().build();
+  }
+
+  /**
+   * @return true if the circuit breakers can be evicted from the registry
+   */
+  public boolean isBounded() {
+    return maxSize > 0 || !idleTimeout.isZero();
+  }
+}
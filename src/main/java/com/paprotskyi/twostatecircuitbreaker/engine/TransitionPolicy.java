@@ -0,0 +1,85 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+
+/**
+ * Decides when an OPEN ThresholdCircuitBreaker can be closed: the breaker is closed when the transition rating
+ * reaches the {@link StateTransitionParameters#getTransitionRatingThreshold() threshold}.
+ * <p>
+ * Every breaker has its own policy, created by the {@link Factory} from its {@link ThresholdCircuitBreakerConfig}.
+ * The policy is told about every recorded outcome, so it can keep its own statistics instead of
+ * reading the sliding window. All the methods are called concurrently.
+ */
+public interface TransitionPolicy {
+
+  /**
+   * Called for every call recorded as a success, in any state.
+   */
+  void onSuccess(long durationInNanos);
+
+  /**
+   * Called for every call recorded as a failure, in any state.
+   */
+  void onError(long durationInNanos);
+
+  /**
+   * Called for a batch of calls recorded at once, in any state, classified by the caller as in
+   * {@link ThresholdCircuitBreaker#onBatch}. By default every call is reported on its own with the mean duration,
+   * a policy, which classifies the calls by their duration, should take the slow calls from the counts instead.
+   *
+   * @param meanDurationInNanos the mean duration of all the calls of the batch
+   */
+  default void onBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                       int numberOfFailedCalls, int numberOfSlowFailedCalls, long meanDurationInNanos) {
+    for (int i = 0; i < numberOfSuccessfulCalls + numberOfSlowSuccessfulCalls; i++) {
+      onSuccess(meanDurationInNanos);
+    }
+    for (int i = 0; i < numberOfFailedCalls + numberOfSlowFailedCalls; i++) {
+      onError(meanDurationInNanos);
+    }
+  }
+
+  /**
+   * @param metrics                         the sliding window of the breaker
+   * @param currentOpenStateDurationInNanos how long the breaker has been OPEN
+   * @return the OPEN to CLOSED transition rating
+   */
+  float calculateTransitionValue(SimpleMetrics metrics, long currentOpenStateDurationInNanos);
+
+  StateTransitionParameters getParameters();
+
+  /**
+   * Replaces the parameters, the policy must switch to them without blocking the calls.
+   */
+  void setParameters(StateTransitionParameters parameters);
+
+  @FunctionalInterface
+  interface Factory {
+
+    TransitionPolicy create(CircuitBreakerConfig circuitBreakerConfig, StateTransitionParameters parameters);
+  }
+
+  /**
+   * The built-in policies, which can be selected in the properties.
+   */
+  enum BuiltIn implements Factory {
+    /**
+     * The {@link StateTransitionCalculator}, the weighted sum of the sliding window rates.
+     */
+    WEIGHTED_SUM {
+      @Override
+      public TransitionPolicy create(CircuitBreakerConfig circuitBreakerConfig, StateTransitionParameters parameters) {
+        return new StateTransitionCalculator(parameters);
+      }
+    },
+    /**
+     * The {@link EwmaTransitionPolicy}, which does not depend on the sliding window.
+     */
+    EWMA {
+      @Override
+      public TransitionPolicy create(CircuitBreakerConfig circuitBreakerConfig, StateTransitionParameters parameters) {
+        return new EwmaTransitionPolicy(circuitBreakerConfig, parameters);
+      }
+    }
+  }
+}
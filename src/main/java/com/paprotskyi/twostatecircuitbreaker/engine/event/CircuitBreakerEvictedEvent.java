@@ -0,0 +1,58 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.event;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.core.registry.RegistryEvent;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Published by a bounded ThresholdCircuitBreakerRegistry after a circuit breaker is evicted.
+ * The usual entry removed event is published as well, before this one.
+ */
+public class CircuitBreakerEvictedEvent implements RegistryEvent {
+
+  private final CircuitBreaker evictedEntry;
+  private final EvictionCause cause;
+  private final ZonedDateTime creationTime;
+
+  public CircuitBreakerEvictedEvent(CircuitBreaker evictedEntry, EvictionCause cause) {
+    this.evictedEntry = evictedEntry;
+    this.cause = cause;
+    this.creationTime = ZonedDateTime.now();
+  }
+
+  @Override
+  public Type getEventType() {
+    return Type.REMOVED;
+  }
+
+  @Override
+  public ZonedDateTime getCreationTime() {
+    return creationTime;
+  }
+
+  public CircuitBreaker getEvictedEntry() {
+    return evictedEntry;
+  }
+
+  public EvictionCause getCause() {
+    return cause;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: circuit breaker '%s' evicted, cause: %s",
+        creationTime, evictedEntry.getName(), cause);
+  }
+
+  public enum EvictionCause {
+    /**
+     * The registry was above its maximum size, the least recently used circuit breaker was evicted.
+     */
+    SIZE,
+    /**
+     * The circuit breaker had not been looked up for longer than the idle timeout.
+     */
+    IDLE
+  }
+}
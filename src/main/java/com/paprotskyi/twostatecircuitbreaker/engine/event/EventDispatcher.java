@@ -0,0 +1,64 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.event;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The single consumer thread, which delivers the buffered events of all the ThresholdCircuitBreakers
+ * to their subscribers.
+ * <p>
+ * A publisher is scheduled here only when its buffer becomes non-empty, so the idle breakers cost nothing,
+ * and the thread parks while there is nothing to deliver. A slow subscriber delays only the delivery:
+ * the breakers keep publishing into their buffers and drop the events once the buffers are full.
+ */
+@Slf4j
+final class EventDispatcher implements Runnable {
+
+  private static final String THREAD_NAME = "threshold-circuit-breaker-events";
+
+  private final Queue<ThresholdCircuitBreakerEventPublisher> scheduledPublishers = new ConcurrentLinkedQueue<>();
+  private final Thread thread;
+  private volatile boolean waiting;
+
+  private EventDispatcher() {
+    this.thread = new Thread(this, THREAD_NAME);
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  static EventDispatcher shared() {
+    return Holder.INSTANCE;
+  }
+
+  void schedule(ThresholdCircuitBreakerEventPublisher publisher) {
+    scheduledPublishers.offer(publisher);
+    if (waiting) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  @Override
+  public void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      ThresholdCircuitBreakerEventPublisher publisher = scheduledPublishers.poll();
+      if (publisher != null) {
+        publisher.dispatchPendingEvents();
+        continue;
+      }
+      // the flag is raised before the last check, so a publisher scheduled after the check unparks the thread
+      waiting = true;
+      if (scheduledPublishers.isEmpty()) {
+        LockSupport.park(this);
+      }
+      waiting = false;
+    }
+    log.warn("The {} thread has been interrupted, the events are not delivered anymore", THREAD_NAME);
+  }
+
+  private static class Holder {
+    private static final EventDispatcher INSTANCE = new EventDispatcher();
+  }
+}
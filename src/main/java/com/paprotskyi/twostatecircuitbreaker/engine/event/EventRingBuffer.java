@@ -0,0 +1,68 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * A producer claims the next slot by moving the tail with a CAS and then fills it, so it never waits
+ * for the consumer: when the buffer is full the offer fails immediately. The consumer empties the slot
+ * before moving the head, which frees the slot for the producers.
+ *
+ * @param <T> the element type
+ */
+class EventRingBuffer<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  // written by the consumer thread only
+  private volatile long head;
+
+  EventRingBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * @return false if the buffer is full, the element is not added then
+   */
+  boolean offer(T element) {
+    long currentTail;
+    do {
+      currentTail = tail.get();
+      if (currentTail - head >= slots.length()) {
+        return false;
+      }
+    } while (!tail.compareAndSet(currentTail, currentTail + 1));
+    slots.lazySet((int) currentTail & mask, element);
+    return true;
+  }
+
+  /**
+   * Must be called by the consumer thread only.
+   *
+   * @return the oldest element, or null if the buffer is empty or the oldest slot is claimed, but not filled yet
+   */
+  T poll() {
+    long currentHead = head;
+    int index = (int) currentHead & mask;
+    T element = slots.get(index);
+    if (element == null) {
+      return null;
+    }
+    slots.lazySet(index, null);
+    head = currentHead + 1;
+    return element;
+  }
+
+  boolean isEmpty() {
+    return tail.get() == head;
+  }
+
+  int capacity() {
+    return slots.length();
+  }
+}
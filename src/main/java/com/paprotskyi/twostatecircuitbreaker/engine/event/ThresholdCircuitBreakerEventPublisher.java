@@ -0,0 +1,168 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.event;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnCallNotPermittedEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnErrorEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnFailureRateExceededEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnIgnoredErrorEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnResetEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnSlowCallRateExceededEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnStateTransitionEvent;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerOnSuccessEvent;
+import io.github.resilience4j.core.EventConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The event publisher of a ThresholdCircuitBreaker, which takes the event delivery off the calling threads.
+ * <p>
+ * The events are put into a bounded {@link EventRingBuffer} and delivered to the subscribers by the shared
+ * {@link EventDispatcher} thread. A caller never waits: if the buffer is full, the event is dropped
+ * and counted in {@link #getNumberOfDroppedEvents()}. The buffer is created on the first subscription,
+ * and the breaker checks {@link #hasConsumers()} before creating an event, so nothing is allocated
+ * until somebody subscribes.
+ */
+@Slf4j
+public class ThresholdCircuitBreakerEventPublisher implements CircuitBreaker.EventPublisher {
+
+  // the number of events delivered at once, before the other scheduled publishers get their turn
+  private static final int DISPATCH_BATCH_SIZE = 256;
+
+  private final int bufferSize;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final LongAdder droppedEvents = new LongAdder();
+  private volatile EventRingBuffer<CircuitBreakerEvent> buffer;
+
+  public ThresholdCircuitBreakerEventPublisher(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  public boolean hasConsumers() {
+    return buffer != null;
+  }
+
+  public long getNumberOfDroppedEvents() {
+    return droppedEvents.sum();
+  }
+
+  /**
+   * Buffers the event for the delivery, should be called only if {@link #hasConsumers()}.
+   */
+  public void publishEvent(CircuitBreakerEvent event) {
+    EventRingBuffer<CircuitBreakerEvent> currentBuffer = buffer;
+    if (currentBuffer == null) {
+      return;
+    }
+    if (!currentBuffer.offer(event)) {
+      droppedEvents.increment();
+      return;
+    }
+    if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+      EventDispatcher.shared().schedule(this);
+    }
+  }
+
+  /**
+   * Called by the {@link EventDispatcher} thread only.
+   */
+  void dispatchPendingEvents() {
+    EventRingBuffer<CircuitBreakerEvent> currentBuffer = buffer;
+    for (int i = 0; i < DISPATCH_BATCH_SIZE; i++) {
+      CircuitBreakerEvent event = currentBuffer.poll();
+      if (event == null) {
+        break;
+      }
+      dispatch(event);
+    }
+    if (!currentBuffer.isEmpty()) {
+      // more events, or a slot claimed by a producer and not filled yet
+      EventDispatcher.shared().schedule(this);
+      return;
+    }
+    scheduled.set(false);
+    // an event published after the isEmpty check could have seen the flag still raised
+    if (!currentBuffer.isEmpty() && scheduled.compareAndSet(false, true)) {
+      EventDispatcher.shared().schedule(this);
+    }
+  }
+
+  private void dispatch(CircuitBreakerEvent event) {
+    for (Subscription subscription : subscriptions) {
+      if (subscription.eventType == null || subscription.eventType == event.getEventType()) {
+        try {
+          subscription.eventConsumer.consumeEvent(event);
+        } catch (RuntimeException e) {
+          log.warn("Event consumer of the CircuitBreaker '{}' has failed", event.getCircuitBreakerName(), e);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void onEvent(EventConsumer<CircuitBreakerEvent> eventConsumer) {
+    subscribe(null, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onSuccess(EventConsumer<CircuitBreakerOnSuccessEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.SUCCESS, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onError(EventConsumer<CircuitBreakerOnErrorEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.ERROR, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onStateTransition(
+      EventConsumer<CircuitBreakerOnStateTransitionEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.STATE_TRANSITION, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onReset(EventConsumer<CircuitBreakerOnResetEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.RESET, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onIgnoredError(EventConsumer<CircuitBreakerOnIgnoredErrorEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.IGNORED_ERROR, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onCallNotPermitted(
+      EventConsumer<CircuitBreakerOnCallNotPermittedEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.NOT_PERMITTED, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onFailureRateExceeded(
+      EventConsumer<CircuitBreakerOnFailureRateExceededEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.FAILURE_RATE_EXCEEDED, eventConsumer);
+  }
+
+  @Override
+  public CircuitBreaker.EventPublisher onSlowCallRateExceeded(
+      EventConsumer<CircuitBreakerOnSlowCallRateExceededEvent> eventConsumer) {
+    return subscribe(CircuitBreakerEvent.Type.SLOW_CALL_RATE_EXCEEDED, eventConsumer);
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized CircuitBreaker.EventPublisher subscribe(
+      CircuitBreakerEvent.Type eventType, EventConsumer<? extends CircuitBreakerEvent> eventConsumer) {
+    subscriptions.add(new Subscription(eventType, (EventConsumer<CircuitBreakerEvent>) eventConsumer));
+    if (buffer == null) {
+      buffer = new EventRingBuffer<>(bufferSize);
+    }
+    return this;
+  }
+
+  private record Subscription(CircuitBreakerEvent.Type eventType, EventConsumer<CircuitBreakerEvent> eventConsumer) {
+  }
+}
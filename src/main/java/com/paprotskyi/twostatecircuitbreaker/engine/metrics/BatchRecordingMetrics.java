@@ -0,0 +1,20 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import io.github.resilience4j.core.metrics.Metrics;
+import io.github.resilience4j.core.metrics.Snapshot;
+
+/**
+ * A sliding window, which can record the outcomes of many calls in one step,
+ * e.g. the results of a pipelined request, which arrive at once.
+ */
+public interface BatchRecordingMetrics extends Metrics {
+
+  /**
+   * Records the calls of a batch and takes a single snapshot afterwards.
+   *
+   * @param totalDurationInMillis the total duration of all the calls of the batch
+   * @return the snapshot, which includes the whole batch
+   */
+  Snapshot recordBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                       int numberOfFailedCalls, int numberOfSlowFailedCalls, long totalDurationInMillis);
+}
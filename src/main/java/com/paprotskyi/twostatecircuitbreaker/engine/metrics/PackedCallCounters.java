@@ -0,0 +1,98 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+/**
+ * The counters of an approximate COUNT_BASED sliding window packed into 21-bit fields of one long,
+ * so they are updated together with a single CAS: the calls, the failed calls and the slow calls.
+ * <p>
+ * The counters are halved when the number of calls reaches twice the window size, so they cover
+ * between N and 2N latest calls, the older ones with a lower weight.
+ */
+public final class PackedCallCounters {
+
+  private static final int COUNTER_BITS = 21;
+  private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+  private static final int CALLS_SHIFT = 0;
+  private static final int FAILED_SHIFT = COUNTER_BITS;
+  private static final int SLOW_SHIFT = COUNTER_BITS * 2;
+
+  /**
+   * The counters are halved at twice the window size, which has to fit into a field.
+   */
+  public static final int MAX_SLIDING_WINDOW_SIZE = 1 << (COUNTER_BITS - 2);
+
+  private PackedCallCounters() {
+  }
+
+  /**
+   * @return the value, which is added to the counters for a call
+   */
+  public static long delta(boolean isFailure, boolean isSlow) {
+    return (1L << CALLS_SHIFT)
+        + (isFailure ? 1L << FAILED_SHIFT : 0L)
+        + (isSlow ? 1L << SLOW_SHIFT : 0L);
+  }
+
+  /**
+   * @return the counters with the call added, halved if they have reached twice the window size
+   */
+  public static long add(long counters, long delta, int slidingWindowSize) {
+    return halveIfFull(counters + delta, slidingWindowSize);
+  }
+
+  /**
+   * Adds the calls of the same outcome at once, then halves the counters once if they have reached twice
+   * the window size. More calls than twice the window size are counted as twice the window size,
+   * so the fields never overflow.
+   *
+   * @return the counters with the calls added
+   */
+  public static long add(long counters, long delta, int numberOfCalls, int slidingWindowSize) {
+    long addedCalls = Math.min(Math.max(0, numberOfCalls), 2L * slidingWindowSize);
+    return halveIfFull(counters + addedCalls * delta, slidingWindowSize);
+  }
+
+  private static long halveIfFull(long counters, int slidingWindowSize) {
+    if (getNumberOfCalls(counters) >= 2L * slidingWindowSize) {
+      return (getNumberOfCalls(counters) / 2) << CALLS_SHIFT
+          | (getNumberOfFailedCalls(counters) / 2) << FAILED_SHIFT
+          | (getNumberOfSlowCalls(counters) / 2) << SLOW_SHIFT;
+    }
+    return counters;
+  }
+
+  public static long getNumberOfCalls(long counters) {
+    return (counters >>> CALLS_SHIFT) & COUNTER_MASK;
+  }
+
+  public static long getNumberOfFailedCalls(long counters) {
+    return (counters >>> FAILED_SHIFT) & COUNTER_MASK;
+  }
+
+  public static long getNumberOfSlowCalls(long counters) {
+    return (counters >>> SLOW_SHIFT) & COUNTER_MASK;
+  }
+
+  /**
+   * @return the decimal rate of the target calls, 0 below the minimum number of calls
+   */
+  public static float getDecimalRate(long counters, long targetCalls, int minimumNumberOfCalls) {
+    long calls = getNumberOfCalls(counters);
+    if (calls == 0 || calls < minimumNumberOfCalls) {
+      return 0.0f;
+    }
+    return (float) targetCalls / calls;
+  }
+
+  /**
+   * The same check as in the SimpleMetrics, the thresholds are in percentage.
+   */
+  public static boolean hasExceededThresholds(long counters, int minimumNumberOfCalls,
+                                              float failureRateThreshold, float slowCallRateThreshold) {
+    long calls = getNumberOfCalls(counters);
+    if (calls == 0 || calls < minimumNumberOfCalls) {
+      return false;
+    }
+    return getNumberOfFailedCalls(counters) * 100.0f / calls >= failureRateThreshold
+        || getNumberOfSlowCalls(counters) * 100.0f / calls >= slowCallRateThreshold;
+  }
+}
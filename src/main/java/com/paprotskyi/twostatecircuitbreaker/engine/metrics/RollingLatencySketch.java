@@ -0,0 +1,212 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A fixed-size latency histogram of the latest calls, which is used to estimate the latency quantiles.
+ * <p>
+ * The latencies are counted in log-linear buckets, the same as in an HDR histogram: each power of two range
+ * of microseconds is split into 16 buckets, so a quantile is within about 6% of the real value.
+ * The window is split into intervals, each one has its own buckets, and the interval of the oldest calls is
+ * cleared and reused when a new one starts. The quantiles are taken from the buckets of all the current intervals
+ * merged together, and the sketches of the same window can be {@link #merge merged} the same way.
+ * <p>
+ * Recording is a single atomic increment and allocates nothing. The counts are approximate: an interval
+ * is cleared without stopping the threads, which are recording into it at that moment.
+ * The buckets take about 11 KB, they are allocated on the first recorded call, so a circuit breaker,
+ * which is created but never called, does not pay for them.
+ */
+public class RollingLatencySketch {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // the latencies up to 2^32 microseconds (more than an hour) are told apart, the longer ones are put together
+  private static final int MAX_EXPONENT = 31;
+  private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+  private static final int NUMBER_OF_INTERVALS = 6;
+
+  private static final AtomicReferenceFieldUpdater<RollingLatencySketch, AtomicIntegerArray> COUNTS =
+      AtomicReferenceFieldUpdater.newUpdater(RollingLatencySketch.class, AtomicIntegerArray.class, "counts");
+
+  //the buckets of all the intervals one after another, null until the first call is recorded
+  private volatile AtomicIntegerArray counts;
+  private final AtomicLongArray intervalEpochs;
+  private final long intervalInMillis;
+  private final Clock clock;
+
+  /**
+   * @param windowDuration the duration of the window, it is split into 6 intervals
+   */
+  public RollingLatencySketch(Duration windowDuration, Clock clock) {
+    this.intervalInMillis = Math.max(1, windowDuration.toMillis() / NUMBER_OF_INTERVALS);
+    this.clock = clock;
+    this.intervalEpochs = new AtomicLongArray(NUMBER_OF_INTERVALS);
+    long currentEpoch = currentEpoch();
+    for (int i = 0; i < NUMBER_OF_INTERVALS; i++) {
+      intervalEpochs.set(i, currentEpoch - i);
+    }
+  }
+
+  /**
+   * Records the latency of a call.
+   *
+   * @return true if a new interval has been started by this call, so the quantiles could change noticeably
+   */
+  public boolean record(long durationInNanos) {
+    AtomicIntegerArray currentCounts = getOrCreateCounts();
+    long epoch = currentEpoch();
+    int interval = Math.floorMod(epoch, NUMBER_OF_INTERVALS);
+    boolean isIntervalStarted = startInterval(currentCounts, interval, epoch);
+    currentCounts.incrementAndGet(interval * BUCKET_COUNT
+        + bucketIndex(TimeUnit.NANOSECONDS.toMicros(durationInNanos)));
+    return isIntervalStarted;
+  }
+
+  /**
+   * Adds the calls of another sketch with the same window duration, e.g. of another instance of the service,
+   * interval by interval, so they leave this window together with the calls recorded here at the same time.
+   * The quantiles of the merged sketch are the same as if all the calls had been recorded into it.
+   *
+   * @throws IllegalArgumentException if the other sketch has a different window duration
+   */
+  public void merge(RollingLatencySketch other) {
+    if (other.intervalInMillis != intervalInMillis) {
+      throw new IllegalArgumentException("Only the sketches with the same window duration can be merged");
+    }
+    AtomicIntegerArray otherCounts = other.counts;
+    if (otherCounts == null || other == this) {
+      return;
+    }
+    AtomicIntegerArray currentCounts = getOrCreateCounts();
+    long currentEpoch = currentEpoch();
+    for (int interval = 0; interval < NUMBER_OF_INTERVALS; interval++) {
+      long epoch = other.intervalEpochs.get(interval);
+      // the intervals, which have left this window or are ahead of this clock, are skipped
+      if (epoch <= currentEpoch - NUMBER_OF_INTERVALS || epoch > currentEpoch) {
+        continue;
+      }
+      startInterval(currentCounts, interval, epoch);
+      if (intervalEpochs.get(interval) != epoch) {
+        continue;
+      }
+      int intervalOffset = interval * BUCKET_COUNT;
+      for (int i = intervalOffset; i < intervalOffset + BUCKET_COUNT; i++) {
+        int count = otherCounts.get(i);
+        if (count != 0) {
+          currentCounts.addAndGet(i, count);
+        }
+      }
+    }
+  }
+
+  private AtomicIntegerArray getOrCreateCounts() {
+    AtomicIntegerArray currentCounts = counts;
+    if (currentCounts == null) {
+      COUNTS.compareAndSet(this, null, new AtomicIntegerArray(NUMBER_OF_INTERVALS * BUCKET_COUNT));
+      currentCounts = counts;
+    }
+    return currentCounts;
+  }
+
+  /**
+   * Clears and reuses the interval for the epoch, if it still holds an older one.
+   *
+   * @return true if the interval has been started by this thread
+   */
+  private boolean startInterval(AtomicIntegerArray currentCounts, int interval, long epoch) {
+    long intervalEpoch = intervalEpochs.get(interval);
+    if (intervalEpoch >= epoch || !intervalEpochs.compareAndSet(interval, intervalEpoch, epoch)) {
+      return false;
+    }
+    int intervalOffset = interval * BUCKET_COUNT;
+    for (int i = intervalOffset; i < intervalOffset + BUCKET_COUNT; i++) {
+      currentCounts.lazySet(i, 0);
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of calls in the window
+   */
+  public long getNumberOfCalls() {
+    long total = 0;
+    for (long count : mergeIntervals()) {
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   * @param quantile from 0 to 1, e.g. 0.99
+   * @return the estimated latency of the quantile in nanos, or 0 if there are no calls in the window
+   */
+  public long getQuantileInNanos(double quantile) {
+    long[] counts = mergeIntervals();
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return TimeUnit.MICROSECONDS.toNanos(bucketHighestValue(i));
+      }
+    }
+    return TimeUnit.MICROSECONDS.toNanos(bucketHighestValue(BUCKET_COUNT - 1));
+  }
+
+  private long[] mergeIntervals() {
+    long currentEpoch = currentEpoch();
+    long[] mergedCounts = new long[BUCKET_COUNT];
+    AtomicIntegerArray currentCounts = counts;
+    if (currentCounts == null) {
+      return mergedCounts;
+    }
+    for (int interval = 0; interval < NUMBER_OF_INTERVALS; interval++) {
+      if (intervalEpochs.get(interval) <= currentEpoch - NUMBER_OF_INTERVALS) {
+        continue;
+      }
+      int intervalOffset = interval * BUCKET_COUNT;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        mergedCounts[i] += currentCounts.get(intervalOffset + i);
+      }
+    }
+    return mergedCounts;
+  }
+
+  private long currentEpoch() {
+    return clock.millis() / intervalInMillis;
+  }
+
+  static int bucketIndex(long valueInMicros) {
+    if (valueInMicros < SUB_BUCKET_COUNT) {
+      return (int) Math.max(0, valueInMicros);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(valueInMicros);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (valueInMicros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long bucketHighestValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    int subBucket = index % SUB_BUCKET_COUNT;
+    long bucketWidth = 1L << (exponent - SUB_BUCKET_BITS);
+    return (1L << exponent) + subBucket * bucketWidth + bucketWidth - 1;
+  }
+}
@@ -0,0 +1,220 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import io.github.resilience4j.core.metrics.Metrics;
+import io.github.resilience4j.core.metrics.Snapshot;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free COUNT_BASED sliding window, an alternative to
+ * {@link io.github.resilience4j.core.metrics.FixedSizeSlidingWindowMetrics FixedSizeSlidingWindowMetrics},
+ * whose record() and getSnapshot() methods are synchronized.
+ * <p>
+ * The window of N calls is split into stripes, each stripe is a small ring of the latest outcomes
+ * together with its own outcome counters, which are padded to a cache line pair of their own.
+ * A call claims the next slot of the less filled one of two stripes picked by the thread local random with a CAS,
+ * and picks again, when the CAS loses to a concurrent call, so the concurrent calls spread over the stripes
+ * without a shared write. The two choices keep the stripes filled evenly, so the window holds about
+ * the last N calls, and exactly N of them once it is full.
+ * A stable stripe per thread would shrink the window of a single busy thread to the size of a stripe.
+ * <p>
+ * The counters of all stripes are merged only when a snapshot is taken. {@link #recordWithoutSnapshot} records
+ * a call without it, when the caller knows the call cannot exceed the thresholds, see {@link #isFull()}.
+ */
+public class StripedSlidingWindowMetrics implements BatchRecordingMetrics {
+
+  // a single stripe packs its four counters into 16-bit fields of one long
+  private static final int COUNTER_BITS = 16;
+  private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+  // leaves headroom for the transient over-count of concurrent writers
+  private static final int MAX_STRIPE_SIZE = 1 << (COUNTER_BITS - 1);
+
+  private static final int CALLS_SHIFT = 0;
+  private static final int FAILED_SHIFT = COUNTER_BITS;
+  private static final int SLOW_SHIFT = COUNTER_BITS * 2;
+  private static final int SLOW_FAILED_SHIFT = COUNTER_BITS * 3;
+
+  // a ring slot keeps the outcome code in the low bits and the duration in millis in the high bits
+  private static final int OUTCOME_BITS = 3;
+  private static final long OUTCOME_MASK = (1L << OUTCOME_BITS) - 1;
+  private static final long EMPTY_SLOT = 0L;
+
+  // the fields of a stripe take 128 bytes of the stripe array, so the adjacent line prefetch does not share them
+  private static final int STRIPE_STRIDE = 16;
+  private static final int CURSOR_OFFSET = 0;
+  private static final int COUNTERS_OFFSET = 1;
+  private static final int TOTAL_DURATION_OFFSET = 2;
+
+  private static final long[] COUNTER_DELTAS = new long[Outcome.values().length + 1];
+
+  static {
+    for (Outcome outcome : Outcome.values()) {
+      long delta = 1L << CALLS_SHIFT;
+      if (outcome == Outcome.ERROR || outcome == Outcome.SLOW_ERROR) {
+        delta += 1L << FAILED_SHIFT;
+      }
+      if (outcome == Outcome.SLOW_SUCCESS || outcome == Outcome.SLOW_ERROR) {
+        delta += 1L << SLOW_SHIFT;
+      }
+      if (outcome == Outcome.SLOW_ERROR) {
+        delta += 1L << SLOW_FAILED_SHIFT;
+      }
+      COUNTER_DELTAS[outcomeCode(outcome)] = delta;
+    }
+  }
+
+  private final AtomicLongArray[] rings;
+  // the cursor, the packed counters and the total duration of every stripe, the first stride is left empty
+  private final AtomicLongArray stripes;
+  // set by a snapshot, once every ring is full, the rings never get emptier
+  private volatile boolean isFull;
+
+  /**
+   * Creates a new {@link StripedSlidingWindowMetrics} with the given window size,
+   * striped by the number of available processors.
+   *
+   * @param windowSize the window size
+   */
+  public StripedSlidingWindowMetrics(int windowSize) {
+    this(windowSize, Runtime.getRuntime().availableProcessors());
+  }
+
+  public StripedSlidingWindowMetrics(int windowSize, int concurrencyLevel) {
+    if (windowSize < 1) {
+      throw new IllegalArgumentException("Window size must be positive");
+    }
+    int numberOfStripes = Math.min(Math.max(concurrencyLevel, 1), windowSize);
+    numberOfStripes = Math.max(numberOfStripes, (windowSize + MAX_STRIPE_SIZE - 1) / MAX_STRIPE_SIZE);
+    this.rings = new AtomicLongArray[numberOfStripes];
+    for (int i = 0; i < numberOfStripes; i++) {
+      int stripeSize = windowSize / numberOfStripes + (i < windowSize % numberOfStripes ? 1 : 0);
+      rings[i] = new AtomicLongArray(stripeSize);
+    }
+    this.stripes = new AtomicLongArray((numberOfStripes + 1) * STRIPE_STRIDE);
+  }
+
+  @Override
+  public Snapshot record(long duration, TimeUnit durationUnit, Outcome outcome) {
+    recordWithoutSnapshot(duration, durationUnit, outcome);
+    return getSnapshot();
+  }
+
+  /**
+   * Records a call without merging the stripes.
+   */
+  public void recordWithoutSnapshot(long duration, TimeUnit durationUnit, Outcome outcome) {
+    recordSlot((durationUnit.toMillis(duration) << OUTCOME_BITS) | outcomeCode(outcome));
+  }
+
+  /**
+   * @return true once the window has been filled, from then on a fast successful call can only lower
+   * the failure rate and the slow call rate, so it needs no threshold check
+   */
+  public boolean isFull() {
+    return isFull;
+  }
+
+  /**
+   * The total duration is spread evenly over the calls, as the ring keeps a duration per call.
+   */
+  @Override
+  public Snapshot recordBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                              int numberOfFailedCalls, int numberOfSlowFailedCalls, long totalDurationInMillis) {
+    int numberOfCalls = numberOfSuccessfulCalls + numberOfSlowSuccessfulCalls
+        + numberOfFailedCalls + numberOfSlowFailedCalls;
+    if (numberOfCalls > 0) {
+      long durationInMillis = totalDurationInMillis / numberOfCalls;
+      long remainingDurationInMillis = totalDurationInMillis % numberOfCalls;
+      int call = 0;
+      for (Outcome outcome : Outcome.values()) {
+        int numberOfOutcomes = switch (outcome) {
+          case SUCCESS -> numberOfSuccessfulCalls;
+          case SLOW_SUCCESS -> numberOfSlowSuccessfulCalls;
+          case ERROR -> numberOfFailedCalls;
+          case SLOW_ERROR -> numberOfSlowFailedCalls;
+        };
+        for (int i = 0; i < numberOfOutcomes; i++, call++) {
+          long callDurationInMillis = durationInMillis + (call < remainingDurationInMillis ? 1 : 0);
+          recordSlot((callDurationInMillis << OUTCOME_BITS) | outcomeCode(outcome));
+        }
+      }
+    }
+    return getSnapshot();
+  }
+
+  @Override
+  public Snapshot getSnapshot() {
+    long totalDurationInMillis = 0;
+    int calls = 0;
+    int failed = 0;
+    int slow = 0;
+    int slowFailed = 0;
+    boolean areRingsFull = true;
+    for (int stripe = 0; stripe < rings.length; stripe++) {
+      int base = base(stripe);
+      long counters = stripes.get(base + COUNTERS_OFFSET);
+      calls += counter(counters, CALLS_SHIFT);
+      failed += counter(counters, FAILED_SHIFT);
+      slow += counter(counters, SLOW_SHIFT);
+      slowFailed += counter(counters, SLOW_FAILED_SHIFT);
+      totalDurationInMillis += stripes.get(base + TOTAL_DURATION_OFFSET);
+      areRingsFull &= stripes.get(base + CURSOR_OFFSET) >= rings[stripe].length();
+    }
+    if (areRingsFull && !isFull) {
+      isFull = true;
+    }
+    return new WindowSnapshot(totalDurationInMillis, calls, failed, slow, slowFailed);
+  }
+
+  /**
+   * The new outcome is added to the counters before it becomes visible in the ring,
+   * and the evicted one is subtracted after it has left the ring,
+   * so the packed counters never go below zero.
+   */
+  private void recordSlot(long slot) {
+    int stripe;
+    long cursor;
+    do {
+      stripe = pickStripe();
+      cursor = stripes.get(base(stripe) + CURSOR_OFFSET);
+    } while (!stripes.compareAndSet(base(stripe) + CURSOR_OFFSET, cursor, cursor + 1));
+    int base = base(stripe);
+    AtomicLongArray ring = rings[stripe];
+    stripes.getAndAdd(base + COUNTERS_OFFSET, COUNTER_DELTAS[(int) (slot & OUTCOME_MASK)]);
+    stripes.getAndAdd(base + TOTAL_DURATION_OFFSET, slot >>> OUTCOME_BITS);
+
+    long evicted = ring.getAndSet((int) (cursor % ring.length()), slot);
+
+    if (evicted != EMPTY_SLOT) {
+      stripes.getAndAdd(base + COUNTERS_OFFSET, -COUNTER_DELTAS[(int) (evicted & OUTCOME_MASK)]);
+      stripes.getAndAdd(base + TOTAL_DURATION_OFFSET, -(evicted >>> OUTCOME_BITS));
+    }
+  }
+
+  private int pickStripe() {
+    if (rings.length == 1) {
+      return 0;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int stripe = random.nextInt(rings.length);
+    int otherStripe = random.nextInt(rings.length);
+    // the cursors are compared relative to the sizes, as the first stripes can be one slot longer
+    long fill = stripes.get(base(stripe) + CURSOR_OFFSET) * rings[otherStripe].length();
+    long otherFill = stripes.get(base(otherStripe) + CURSOR_OFFSET) * rings[stripe].length();
+    return otherFill < fill ? otherStripe : stripe;
+  }
+
+  private static int base(int stripe) {
+    return (stripe + 1) * STRIPE_STRIDE;
+  }
+
+  private static int counter(long counters, int shift) {
+    return (int) ((counters >>> shift) & COUNTER_MASK);
+  }
+
+  private static int outcomeCode(Outcome outcome) {
+    return outcome.ordinal() + 1;
+  }
+}
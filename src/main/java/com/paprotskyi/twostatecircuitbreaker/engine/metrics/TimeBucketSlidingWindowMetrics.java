@@ -0,0 +1,156 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import io.github.resilience4j.core.metrics.Metrics;
+import io.github.resilience4j.core.metrics.Snapshot;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A TIME_BASED sliding window, which aggregates the outcomes of the last N seconds.
+ * <p>
+ * The window is a ring of per-second buckets with primitive counters and the total latency.
+ * There is no background task: a bucket is rolled over lazily by the first write of a new second,
+ * and the reads simply skip the buckets, which are older than the window.
+ * So the rates always describe the same time horizon, no matter how many calls are made per second.
+ * <p>
+ * The rollover replaces the bucket with a fresh one, so a writer, which has read the bucket
+ * right before the rollover, may add its outcome to a bucket which has just left the window.
+ * This loses at most the outcomes racing with a second boundary, and never blocks a caller.
+ */
+public class TimeBucketSlidingWindowMetrics implements BatchRecordingMetrics {
+
+  private static final int CALLS = 0;
+  private static final int FAILED = 1;
+  private static final int SLOW = 2;
+  private static final int SLOW_FAILED = 3;
+  private static final int DURATION_IN_MILLIS = 4;
+  private static final int NUMBER_OF_COUNTERS = 5;
+
+  private final int windowSizeInSeconds;
+  private final AtomicReferenceArray<Bucket> buckets;
+  private final Clock clock;
+
+  /**
+   * Creates a new {@link TimeBucketSlidingWindowMetrics} with the given window size.
+   *
+   * @param windowSizeInSeconds the window size in seconds
+   * @param clock               the clock, which defines the current second
+   */
+  public TimeBucketSlidingWindowMetrics(int windowSizeInSeconds, Clock clock) {
+    if (windowSizeInSeconds < 1) {
+      throw new IllegalArgumentException("Window size must be positive");
+    }
+    this.windowSizeInSeconds = windowSizeInSeconds;
+    this.clock = clock;
+    this.buckets = new AtomicReferenceArray<>(windowSizeInSeconds);
+    for (int i = 0; i < windowSizeInSeconds; i++) {
+      buckets.set(i, new Bucket(Long.MIN_VALUE));
+    }
+  }
+
+  @Override
+  public Snapshot record(long duration, TimeUnit durationUnit, Outcome outcome) {
+    long currentEpochSecond = currentEpochSecond();
+    currentBucket(currentEpochSecond).record(durationUnit.toMillis(duration), outcome);
+    return snapshot(currentEpochSecond);
+  }
+
+  /**
+   * The whole batch is added to the current bucket with a few atomic additions.
+   */
+  @Override
+  public Snapshot recordBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                              int numberOfFailedCalls, int numberOfSlowFailedCalls, long totalDurationInMillis) {
+    long currentEpochSecond = currentEpochSecond();
+    currentBucket(currentEpochSecond).recordBatch(numberOfSuccessfulCalls, numberOfSlowSuccessfulCalls,
+        numberOfFailedCalls, numberOfSlowFailedCalls, totalDurationInMillis);
+    return snapshot(currentEpochSecond);
+  }
+
+  @Override
+  public Snapshot getSnapshot() {
+    return snapshot(currentEpochSecond());
+  }
+
+  private Snapshot snapshot(long currentEpochSecond) {
+    long oldestEpochSecond = currentEpochSecond - windowSizeInSeconds;
+    long totalDurationInMillis = 0;
+    long calls = 0;
+    long failed = 0;
+    long slow = 0;
+    long slowFailed = 0;
+    for (int i = 0; i < windowSizeInSeconds; i++) {
+      Bucket bucket = buckets.get(i);
+      if (bucket.epochSecond > oldestEpochSecond && bucket.epochSecond <= currentEpochSecond) {
+        calls += bucket.counters.get(CALLS);
+        failed += bucket.counters.get(FAILED);
+        slow += bucket.counters.get(SLOW);
+        slowFailed += bucket.counters.get(SLOW_FAILED);
+        totalDurationInMillis += bucket.counters.get(DURATION_IN_MILLIS);
+      }
+    }
+    return new WindowSnapshot(totalDurationInMillis, saturatedInt(calls), saturatedInt(failed),
+        saturatedInt(slow), saturatedInt(slowFailed));
+  }
+
+  private Bucket currentBucket(long currentEpochSecond) {
+    int index = (int) Math.floorMod(currentEpochSecond, (long) windowSizeInSeconds);
+    Bucket bucket = buckets.get(index);
+    while (bucket.epochSecond < currentEpochSecond) {
+      Bucket rolledOver = new Bucket(currentEpochSecond);
+      if (buckets.compareAndSet(index, bucket, rolledOver)) {
+        return rolledOver;
+      }
+      bucket = buckets.get(index);
+    }
+    return bucket;
+  }
+
+  private long currentEpochSecond() {
+    return Math.floorDiv(clock.millis(), 1000L);
+  }
+
+  private static int saturatedInt(long value) {
+    return (int) Math.min(value, Integer.MAX_VALUE);
+  }
+
+  private static final class Bucket {
+
+    private final long epochSecond;
+    private final AtomicLongArray counters = new AtomicLongArray(NUMBER_OF_COUNTERS);
+
+    private Bucket(long epochSecond) {
+      this.epochSecond = epochSecond;
+    }
+
+    private void record(long durationInMillis, Outcome outcome) {
+      counters.getAndIncrement(CALLS);
+      counters.getAndAdd(DURATION_IN_MILLIS, durationInMillis);
+      switch (outcome) {
+        case SLOW_SUCCESS -> counters.getAndIncrement(SLOW);
+        case ERROR -> counters.getAndIncrement(FAILED);
+        case SLOW_ERROR -> {
+          counters.getAndIncrement(FAILED);
+          counters.getAndIncrement(SLOW);
+          counters.getAndIncrement(SLOW_FAILED);
+        }
+        default -> {
+          // SUCCESS is counted by the number of calls only
+        }
+      }
+    }
+
+    private void recordBatch(int numberOfSuccessfulCalls, int numberOfSlowSuccessfulCalls,
+                             int numberOfFailedCalls, int numberOfSlowFailedCalls, long totalDurationInMillis) {
+      counters.getAndAdd(CALLS, (long) numberOfSuccessfulCalls + numberOfSlowSuccessfulCalls
+          + numberOfFailedCalls + numberOfSlowFailedCalls);
+      counters.getAndAdd(DURATION_IN_MILLIS, totalDurationInMillis);
+      counters.getAndAdd(FAILED, (long) numberOfFailedCalls + numberOfSlowFailedCalls);
+      counters.getAndAdd(SLOW, (long) numberOfSlowSuccessfulCalls + numberOfSlowFailedCalls);
+      counters.getAndAdd(SLOW_FAILED, numberOfSlowFailedCalls);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import io.github.resilience4j.core.metrics.Snapshot;
+
+import java.time.Duration;
+
+/**
+ * An immutable {@link Snapshot Snapshot} built from already aggregated counters.
+ * This is a public counterpart of io.github.resilience4j.core.metrics.SnapshotImpl,
+ * whose constructor is package-private in the library.
+ */
+public class WindowSnapshot implements Snapshot {
+
+  private final long totalDurationInMillis;
+  private final int totalNumberOfSlowCalls;
+  private final int totalNumberOfSlowFailedCalls;
+  private final int totalNumberOfFailedCalls;
+  private final int totalNumberOfCalls;
+
+  public WindowSnapshot(long totalDurationInMillis,
+                        int totalNumberOfCalls,
+                        int totalNumberOfFailedCalls,
+                        int totalNumberOfSlowCalls,
+                        int totalNumberOfSlowFailedCalls) {
+    this.totalDurationInMillis = totalDurationInMillis;
+    this.totalNumberOfCalls = totalNumberOfCalls;
+    this.totalNumberOfFailedCalls = totalNumberOfFailedCalls;
+    this.totalNumberOfSlowCalls = totalNumberOfSlowCalls;
+    this.totalNumberOfSlowFailedCalls = totalNumberOfSlowFailedCalls;
+  }
+
+  @Override
+  public Duration getTotalDuration() {
+    return Duration.ofMillis(totalDurationInMillis);
+  }
+
+  @Override
+  public Duration getAverageDuration() {
+    if (totalNumberOfCalls == 0) {
+      return Duration.ZERO;
+    }
+    return Duration.ofMillis(totalDurationInMillis / totalNumberOfCalls);
+  }
+
+  @Override
+  public int getTotalNumberOfSlowCalls() {
+    return totalNumberOfSlowCalls;
+  }
+
+  @Override
+  public int getNumberOfSlowSuccessfulCalls() {
+    return totalNumberOfSlowCalls - totalNumberOfSlowFailedCalls;
+  }
+
+  @Override
+  public int getNumberOfSlowFailedCalls() {
+    return totalNumberOfSlowFailedCalls;
+  }
+
+  @Override
+  public float getSlowCallRate() {
+    if (totalNumberOfCalls == 0) {
+      return 0;
+    }
+    return totalNumberOfSlowCalls * 100.0f / totalNumberOfCalls;
+  }
+
+  @Override
+  public int getNumberOfSuccessfulCalls() {
+    return totalNumberOfCalls - totalNumberOfFailedCalls;
+  }
+
+  @Override
+  public int getNumberOfFailedCalls() {
+    return totalNumberOfFailedCalls;
+  }
+
+  @Override
+  public int getTotalNumberOfCalls() {
+    return totalNumberOfCalls;
+  }
+
+  @Override
+  public float getFailureRate() {
+    if (totalNumberOfCalls == 0) {
+      return 0;
+    }
+    return totalNumberOfFailedCalls * 100.0f / totalNumberOfCalls;
+  }
+}
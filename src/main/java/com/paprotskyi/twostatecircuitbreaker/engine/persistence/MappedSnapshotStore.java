@@ -0,0 +1,162 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Keeps the states of the circuit breakers in a memory-mapped file, so they survive a restart.
+ * <p>
+ * The file has a fixed binary layout: a 64-byte header and a hash table of 128-byte slots, one per circuit breaker
+ * name. A slot is found by the hash of the name with linear probing, so a lookup touches only a slot or two
+ * and opening the file is a single mmap, whatever its size. The written states reach the file through
+ * the page cache, they are kept if the process crashes, but not if the OS does.
+ * <p>
+ * Slot layout, in bytes: name length (2), UTF-8 name (up to 80), OPEN flag (1), padding (5),
+ * opened at (8), fast successful, fast failed, slow successful and slow failed calls (4 each),
+ * updated at (8), reserved (8). The names longer than 80 bytes are not persisted.
+ */
+@Slf4j
+public class MappedSnapshotStore {
+
+  private static final int MAGIC = 0x54434231; // "TCB1"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_SIZE = 128;
+  private static final int MAX_NAME_LENGTH = 80;
+
+  private static final int NAME_LENGTH_OFFSET = 0;
+  private static final int NAME_OFFSET = 2;
+  private static final int OPEN_OFFSET = NAME_OFFSET + MAX_NAME_LENGTH;
+  private static final int OPENED_AT_OFFSET = 88;
+  private static final int SUCCESSFUL_CALLS_OFFSET = 96;
+  private static final int FAILED_CALLS_OFFSET = 100;
+  private static final int SLOW_SUCCESSFUL_CALLS_OFFSET = 104;
+  private static final int SLOW_FAILED_CALLS_OFFSET = 108;
+  private static final int UPDATED_AT_OFFSET = 112;
+
+  private final MappedByteBuffer buffer;
+  private final int numberOfSlots;
+
+  /**
+   * Maps the file, it is created or reinitialized, when its layout does not match.
+   *
+   * @param numberOfSlots the maximum number of circuit breakers, rounded up to a power of two
+   */
+  public MappedSnapshotStore(Path path, int numberOfSlots) {
+    this.numberOfSlots = Integer.highestOneBit(Math.max(2, numberOfSlots) * 2 - 1);
+    long fileSize = HEADER_SIZE + (long) this.numberOfSlots * SLOT_SIZE;
+    try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      boolean hasLayout = channel.size() == fileSize;
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+      if (!hasLayout || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+          || buffer.getInt(8) != this.numberOfSlots || buffer.getInt(12) != SLOT_SIZE) {
+        log.info("Initializing the circuit breaker snapshot file {}", path);
+        initialize();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot map the circuit breaker snapshot file " + path, e);
+    }
+  }
+
+  private void initialize() {
+    byte[] zeros = new byte[SLOT_SIZE];
+    for (int i = 0; i < numberOfSlots; i++) {
+      buffer.put(HEADER_SIZE + i * SLOT_SIZE, zeros);
+    }
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, numberOfSlots);
+    buffer.putInt(12, SLOT_SIZE);
+    //the magic number is written last, so a half-initialized file is initialized again
+    buffer.putInt(0, MAGIC);
+  }
+
+  public synchronized Optional<PersistedCircuitBreakerState> read(String name) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    int offset = findSlotOffset(nameBytes, false);
+    if (offset < 0) {
+      return Optional.empty();
+    }
+    return Optional.of(new PersistedCircuitBreakerState(
+        buffer.get(offset + OPEN_OFFSET) != 0,
+        buffer.getLong(offset + OPENED_AT_OFFSET),
+        buffer.getInt(offset + SUCCESSFUL_CALLS_OFFSET),
+        buffer.getInt(offset + FAILED_CALLS_OFFSET),
+        buffer.getInt(offset + SLOW_SUCCESSFUL_CALLS_OFFSET),
+        buffer.getInt(offset + SLOW_FAILED_CALLS_OFFSET),
+        buffer.getLong(offset + UPDATED_AT_OFFSET)));
+  }
+
+  /**
+   * @return false if the state is not persisted, because the name is too long or there are no free slots left
+   */
+  public synchronized boolean write(String name, PersistedCircuitBreakerState state) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    if (nameBytes.length > MAX_NAME_LENGTH) {
+      return false;
+    }
+    int offset = findSlotOffset(nameBytes, true);
+    if (offset < 0) {
+      return false;
+    }
+    buffer.put(offset + OPEN_OFFSET, (byte) (state.isOpen() ? 1 : 0));
+    buffer.putLong(offset + OPENED_AT_OFFSET, state.openedAtEpochMillis());
+    buffer.putInt(offset + SUCCESSFUL_CALLS_OFFSET, state.numberOfSuccessfulCalls());
+    buffer.putInt(offset + FAILED_CALLS_OFFSET, state.numberOfFailedCalls());
+    buffer.putInt(offset + SLOW_SUCCESSFUL_CALLS_OFFSET, state.numberOfSlowSuccessfulCalls());
+    buffer.putInt(offset + SLOW_FAILED_CALLS_OFFSET, state.numberOfSlowFailedCalls());
+    buffer.putLong(offset + UPDATED_AT_OFFSET, state.updatedAtEpochMillis());
+    return true;
+  }
+
+  /**
+   * Flushes the written states to the disk, e.g. before a shutdown.
+   */
+  public synchronized void force() {
+    buffer.force();
+  }
+
+  /**
+   * @param isClaimed true if the name should be written into a free slot, when it is not found
+   * @return the offset of the slot of the name or -1
+   */
+  private int findSlotOffset(byte[] nameBytes, boolean isClaimed) {
+    if (nameBytes.length == 0 || nameBytes.length > MAX_NAME_LENGTH) {
+      return -1;
+    }
+    int hash = Arrays.hashCode(nameBytes);
+    int mask = numberOfSlots - 1;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    for (int probe = 0; probe < numberOfSlots; probe++, slot = (slot + 1) & mask) {
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      int nameLength = buffer.getShort(offset + NAME_LENGTH_OFFSET);
+      if (nameLength == 0) {
+        if (!isClaimed) {
+          return -1;
+        }
+        buffer.put(offset + NAME_OFFSET, nameBytes);
+        buffer.putShort(offset + NAME_LENGTH_OFFSET, (short) nameBytes.length);
+        return offset;
+      }
+      if (nameLength == nameBytes.length && hasName(offset, nameBytes)) {
+        return offset;
+      }
+    }
+    return -1;
+  }
+
+  private boolean hasName(int offset, byte[] nameBytes) {
+    byte[] slotName = new byte[nameBytes.length];
+    buffer.get(offset + NAME_OFFSET, slotName);
+    return Arrays.equals(slotName, nameBytes);
+  }
+}
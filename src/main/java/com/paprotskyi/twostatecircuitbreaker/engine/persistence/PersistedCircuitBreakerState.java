@@ -0,0 +1,22 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.persistence;
+
+/**
+ * The state of a ThresholdCircuitBreaker, which is kept in the {@link MappedSnapshotStore}.
+ * The timestamps are the wall clock millis, so they are still valid after a restart.
+ *
+ * @param isOpen                      true if the circuit breaker was OPEN
+ * @param openedAtEpochMillis         when the circuit breaker was opened, 0 if it was CLOSED
+ * @param numberOfSuccessfulCalls     the fast successful calls of the sliding window
+ * @param numberOfFailedCalls         the fast failed calls of the sliding window
+ * @param numberOfSlowSuccessfulCalls the slow successful calls of the sliding window
+ * @param numberOfSlowFailedCalls     the slow failed calls of the sliding window
+ * @param updatedAtEpochMillis        when the state was written
+ */
+public record PersistedCircuitBreakerState(boolean isOpen,
+                                           long openedAtEpochMillis,
+                                           int numberOfSuccessfulCalls,
+                                           int numberOfFailedCalls,
+                                           int numberOfSlowSuccessfulCalls,
+                                           int numberOfSlowFailedCalls,
+                                           long updatedAtEpochMillis) {
+}
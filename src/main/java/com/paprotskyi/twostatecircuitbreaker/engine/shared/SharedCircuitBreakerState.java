@@ -0,0 +1,69 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.shared;
+
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.PackedCallCounters;
+
+import java.nio.MappedByteBuffer;
+
+import static com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedStateRegion.COUNTERS_OFFSET;
+import static com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedStateRegion.LONGS;
+import static com.paprotskyi.twostatecircuitbreaker.engine.shared.SharedStateRegion.STATE_WORD_OFFSET;
+
+/**
+ * A slot of the {@link SharedStateRegion}, which is shared by the circuit breakers with the same name in all the JVMs.
+ * <p>
+ * The state word is the wall clock millis of the last transition: positive when the circuit breakers are OPEN
+ * since then, negative when they are CLOSED since then and 0 when they have never been opened.
+ * As every transition writes a new word, a CAS from the word seen before the transition fails
+ * when another JVM has made a transition in between.
+ */
+public class SharedCircuitBreakerState {
+
+  private final MappedByteBuffer buffer;
+  private final int offset;
+
+  SharedCircuitBreakerState(MappedByteBuffer buffer, int offset) {
+    this.buffer = buffer;
+    this.offset = offset;
+  }
+
+  public long getStateWord() {
+    return (long) LONGS.getVolatile(buffer, offset + STATE_WORD_OFFSET);
+  }
+
+  public boolean compareAndSetStateWord(long expectedStateWord, long stateWord) {
+    return LONGS.compareAndSet(buffer, offset + STATE_WORD_OFFSET, expectedStateWord, stateWord);
+  }
+
+  public static boolean isOpen(long stateWord) {
+    return stateWord > 0;
+  }
+
+  /**
+   * Adds a call to the shared window counters.
+   *
+   * @param delta the {@link PackedCallCounters#delta(boolean, boolean)} of the call
+   * @return the updated counters
+   */
+  public long record(long delta, int slidingWindowSize) {
+    return record(delta, 1, slidingWindowSize);
+  }
+
+  /**
+   * Adds several calls with the same outcome to the shared window counters with a single CAS.
+   *
+   * @return the updated counters
+   */
+  public long record(long delta, int numberOfCalls, int slidingWindowSize) {
+    long current;
+    long updated;
+    do {
+      current = getCounters();
+      updated = PackedCallCounters.add(current, delta, numberOfCalls, slidingWindowSize);
+    } while (!LONGS.compareAndSet(buffer, offset + COUNTERS_OFFSET, current, updated));
+    return updated;
+  }
+
+  public long getCounters() {
+    return (long) LONGS.getVolatile(buffer, offset + COUNTERS_OFFSET);
+  }
+}
@@ -0,0 +1,133 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.shared;
+
+import com.paprotskyi.twostatecircuitbreaker.engine.ThresholdCircuitBreakerGroup;
+import io.github.resilience4j.core.lang.Nullable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped file, which is mapped by every JVM on the host running the same service, so their circuit breakers
+ * with the same name share one state word and one set of window counters. The slots are read and updated
+ * with the atomic VarHandle operations on the mapped memory, so a call costs no syscall and no lock,
+ * the same as with an AtomicLong.
+ * <p>
+ * The file has a 64-byte header and a hash table of 32-byte slots: the key of the name (8),
+ * the state word (8), the {@link com.paprotskyi.twostatecircuitbreaker.engine.metrics.PackedCallCounters} (8)
+ * and a reserved field (8). A slot is claimed by a CAS of its key, so the JVMs can add the names concurrently,
+ * and it is never released. The names are compared by their 64-bit keys only.
+ * <p>
+ * The file is initialized once under a file lock, the JVMs mapping it later use the number of slots from its header.
+ */
+@Slf4j
+public class SharedStateRegion {
+
+  private static final long MAGIC = 0x5443425348415245L; // "TCBSHARE"
+  private static final long VERSION = 1;
+  private static final int HEADER_SIZE = 64;
+  private static final int SLOT_SIZE = 32;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 8;
+  private static final int NUMBER_OF_SLOTS_OFFSET = 16;
+
+  static final int KEY_OFFSET = 0;
+  static final int STATE_WORD_OFFSET = 8;
+  static final int COUNTERS_OFFSET = 16;
+
+  private static final long EMPTY_KEY = 0L;
+
+  // the mapping is page aligned and every long is at an offset divisible by 8, so the atomic access modes work
+  static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  private final MappedByteBuffer buffer;
+  private final int numberOfSlots;
+
+  /**
+   * Maps the file, it is created and initialized, when it is empty.
+   *
+   * @param numberOfSlots the maximum number of circuit breaker names, rounded up to a power of two,
+   *                      it is ignored if the file has been initialized already
+   */
+  public SharedStateRegion(Path path, int numberOfSlots) {
+    try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // the other JVMs wait for the file to be initialized, the lock is also released when the channel is closed
+      FileLock lock = channel.lock();
+      try {
+        if (channel.size() == 0) {
+          int initialNumberOfSlots = Integer.highestOneBit(Math.max(2, numberOfSlots) * 2 - 1);
+          log.info("Initializing the shared circuit breaker state file {} with {} slots", path,
+              initialNumberOfSlots);
+          this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+              HEADER_SIZE + (long) initialNumberOfSlots * SLOT_SIZE);
+          LONGS.setVolatile(buffer, VERSION_OFFSET, VERSION);
+          LONGS.setVolatile(buffer, NUMBER_OF_SLOTS_OFFSET, (long) initialNumberOfSlots);
+          LONGS.setVolatile(buffer, MAGIC_OFFSET, MAGIC);
+          this.numberOfSlots = initialNumberOfSlots;
+        } else {
+          this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+          this.numberOfSlots = checkHeader(path, channel.size());
+        }
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot map the shared circuit breaker state file " + path, e);
+    }
+  }
+
+  private int checkHeader(Path path, long fileSize) {
+    // the region is used by other JVMs, so a file with an unexpected layout is never reinitialized
+    if (fileSize < HEADER_SIZE || (long) LONGS.getVolatile(buffer, MAGIC_OFFSET) != MAGIC
+        || (long) LONGS.getVolatile(buffer, VERSION_OFFSET) != VERSION) {
+      throw new IllegalStateException(path + " is not a shared circuit breaker state file");
+    }
+    long slots = (long) LONGS.getVolatile(buffer, NUMBER_OF_SLOTS_OFFSET);
+    if (slots <= 0 || Long.bitCount(slots) != 1 || HEADER_SIZE + slots * SLOT_SIZE != fileSize) {
+      throw new IllegalStateException("The shared circuit breaker state file " + path + " is corrupted");
+    }
+    return (int) slots;
+  }
+
+  public int getNumberOfSlots() {
+    return numberOfSlots;
+  }
+
+  /**
+   * @return the shared state of the circuit breakers with the given name, it is added if it is not found,
+   * or null if there are no free slots left
+   */
+  @Nullable
+  public SharedCircuitBreakerState stateOf(String name) {
+    long key = ThresholdCircuitBreakerGroup.keyOf(name);
+    if (key == EMPTY_KEY) {
+      key = 1L;
+    }
+    int mask = numberOfSlots - 1;
+    int slot = (int) (key ^ (key >>> 32)) & mask;
+    for (int probe = 0; probe < numberOfSlots; probe++, slot = (slot + 1) & mask) {
+      int offset = HEADER_SIZE + slot * SLOT_SIZE;
+      long slotKey = (long) LONGS.getVolatile(buffer, offset + KEY_OFFSET);
+      if (slotKey == EMPTY_KEY) {
+        slotKey = (long) LONGS.compareAndExchange(buffer, offset + KEY_OFFSET, EMPTY_KEY, key);
+        if (slotKey == EMPTY_KEY) {
+          return new SharedCircuitBreakerState(buffer, offset);
+        }
+      }
+      if (slotKey == key) {
+        return new SharedCircuitBreakerState(buffer, offset);
+      }
+    }
+    return null;
+  }
+}
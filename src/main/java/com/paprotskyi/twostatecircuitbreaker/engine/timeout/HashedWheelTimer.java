@@ -0,0 +1,205 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.timeout;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed wheel timer, the same as the one of Netty: the timeouts are put into the buckets of a wheel
+ * by their deadlines, and a single thread moves around the wheel, one bucket per tick, and expires them.
+ * Adding and cancelling a timeout is O(1) and never blocks, so it suits the timeouts of many short calls,
+ * which are mostly cancelled, better than a scheduled task per call.
+ * <p>
+ * The timeouts expire up to one tick late. The tasks are run by the timer thread, so they must be short.
+ * A cancelled timeout is removed, when the timer thread reaches its bucket.
+ * A timer, which is not the shared one, has to be stopped, otherwise its thread keeps running.
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+  private static final Duration SHARED_TICK_DURATION = Duration.ofMillis(10);
+  private static final int SHARED_WHEEL_SIZE = 512;
+
+  private final long tickDurationInNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final long startNanos;
+  // the new timeouts are handed over to the timer thread, which is the only one touching the wheel
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  private final Thread worker;
+  private final boolean isShared;
+  private volatile boolean isStopped;
+
+  /**
+   * @param wheelSize the number of the buckets, rounded up to a power of two
+   */
+  public HashedWheelTimer(String threadName, Duration tickDuration, int wheelSize) {
+    this(threadName, tickDuration, wheelSize, false);
+  }
+
+  private HashedWheelTimer(String threadName, Duration tickDuration, int wheelSize, boolean isShared) {
+    this.isShared = isShared;
+    this.tickDurationInNanos = Math.max(1L, tickDuration.toNanos());
+    int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.startNanos = System.nanoTime();
+    this.worker = new Thread(this::run, threadName);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * @return the timer shared by all the circuit breakers, it is started on the first use
+   */
+  public static HashedWheelTimer getSharedInstance() {
+    return SharedInstanceHolder.INSTANCE;
+  }
+
+  /**
+   * Schedules the task to be run by the timer thread after the delay, unless the timeout is cancelled before.
+   */
+  public Timeout newTimeout(Runnable task, long delayInNanos) {
+    if (isStopped) {
+      throw new IllegalStateException("The timer has been stopped");
+    }
+    Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + Math.max(0L, delayInNanos));
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * Stops the timer thread, the timeouts, which have not expired yet, are never run.
+   */
+  public void stop() {
+    if (isShared) {
+      throw new IllegalStateException("The shared timer cannot be stopped");
+    }
+    isStopped = true;
+    LockSupport.unpark(worker);
+  }
+
+  private void run() {
+    long tick = 0;
+    while (true) {
+      waitForTick(tick);
+      if (isStopped) {
+        return;
+      }
+      transferPendingTimeouts(tick);
+      wheel[(int) (tick & mask)].expireTimeouts();
+      tick++;
+    }
+  }
+
+  private void waitForTick(long tick) {
+    long tickDeadline = startNanos + (tick + 1) * tickDurationInNanos;
+    long remainingNanos;
+    while ((remainingNanos = tickDeadline - System.nanoTime()) > 0 && !isStopped) {
+      LockSupport.parkNanos(this, remainingNanos);
+    }
+  }
+
+  private void transferPendingTimeouts(long tick) {
+    Timeout timeout;
+    while ((timeout = pendingTimeouts.poll()) != null) {
+      if (timeout.state != Timeout.PENDING) {
+        continue;
+      }
+      long deadlineTick = timeout.deadlineNanos / tickDurationInNanos;
+      timeout.remainingRounds = Math.max(0L, deadlineTick - tick) / wheel.length;
+      // the timeouts, which are already due, expire on the current tick
+      wheel[(int) (Math.max(deadlineTick, tick) & mask)].add(timeout);
+    }
+  }
+
+  /**
+   * A scheduled task, which can be cancelled until it is run.
+   */
+  public static final class Timeout {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final Runnable task;
+    private final long deadlineNanos;
+    private volatile int state;
+    // only used by the timer thread
+    private long remainingRounds;
+    private Timeout next;
+
+    private Timeout(Runnable task, long deadlineNanos) {
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return true if the timeout is cancelled, false if it has expired or has been cancelled already
+     */
+    public boolean cancel() {
+      return STATE.compareAndSet(this, PENDING, CANCELLED);
+    }
+
+    private void expire() {
+      if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+        return;
+      }
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.warn("A timeout task has failed", e);
+      }
+    }
+  }
+
+  /**
+   * A singly linked list of the timeouts, which is used by the timer thread only.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+
+    private void add(Timeout timeout) {
+      timeout.next = head;
+      head = timeout;
+    }
+
+    private void expireTimeouts() {
+      Timeout previous = null;
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        boolean isRemoved = timeout.state != Timeout.PENDING || timeout.remainingRounds <= 0;
+        if (isRemoved) {
+          timeout.next = null;
+          if (previous == null) {
+            head = next;
+          } else {
+            previous.next = next;
+          }
+          timeout.expire();
+        } else {
+          timeout.remainingRounds--;
+          previous = timeout;
+        }
+        timeout = next;
+      }
+    }
+  }
+
+  private static final class SharedInstanceHolder {
+
+    private static final HashedWheelTimer INSTANCE = new HashedWheelTimer("threshold-circuit-breaker-timer",
+        SHARED_TICK_DURATION, SHARED_WHEEL_SIZE, true);
+  }
+}
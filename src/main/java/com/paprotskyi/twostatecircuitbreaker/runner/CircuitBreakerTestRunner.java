@@ -1,45 +1,251 @@
 package com.paprotskyi.twostatecircuitbreaker.runner;
 
+import com.paprotskyi.twostatecircuitbreaker.service.CallOutcome;
 import com.paprotskyi.twostatecircuitbreaker.service.TestService;
 import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An open-loop load generator: the calls are issued at a fixed arrival rate, no matter how long the previous
+ * calls take, and the latency of a call is measured from its intended start time. So a slow or blocked
+ * service is not hidden by the generator waiting for it (there is no coordinated omission).
+ * <p>
+ * The run consists of a warm-up phase, whose results are dropped, and a measured phase.
+ * Every second the throughput, the success rate and the latency of the permitted, rejected and fallback calls
+ * are reported, the full HDR latency histograms are reported at the end.
+ * <p>
+ * The calls are run on virtual threads when the JVM supports them, otherwise on a pool of
+ * "concurrency" platform threads. In both cases at most "concurrency" calls are in flight, the arrivals
+ * beyond this limit are counted as dropped instead of delaying the schedule.
+ * With "load-test.asynchronous" the asynchronous probes are called straight from the scheduling thread and
+ * the outcome is recorded on completion, so the number of calls in flight is not limited by threads.
+ */
 @Slf4j
 @Component
 public class CircuitBreakerTestRunner implements ApplicationRunner {
 
+  private static final String TRADITIONAL_TEST_MODE = "success_rate_traditional";
+  private static final long HIGHEST_TRACKABLE_LATENCY_IN_MICROS = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 3;
+
   private final int numberOfCalls;
   private final TestService testService;
   private final String testMode;
+  private final int concurrency;
+  private final double arrivalRatePerSecond;
+  private final int numberOfWarmUpCalls;
+  private final boolean asynchronous;
+
+  private final Map<CallOutcome, Recorder> recorders = new EnumMap<>(CallOutcome.class);
+  private final Map<CallOutcome, Histogram> totalHistograms = new EnumMap<>(CallOutcome.class);
+  private final LongAdder droppedCalls = new LongAdder();
 
   public CircuitBreakerTestRunner(@Value("${number-of-test-calls}") int numberOfCalls,
                                   @Value("${test-mode}") String testMode,
+                                  @Value("${load-test.concurrency:16}") int concurrency,
+                                  @Value("${load-test.arrival-rate:2}") double arrivalRatePerSecond,
+                                  @Value("${load-test.warm-up-calls:0}") int numberOfWarmUpCalls,
+                                  @Value("${load-test.asynchronous:false}") boolean asynchronous,
                                   TestService testService) {
     this.numberOfCalls = numberOfCalls;
     this.testService = testService;
     this.testMode = testMode;
+    this.concurrency = concurrency;
+    this.arrivalRatePerSecond = arrivalRatePerSecond;
+    this.numberOfWarmUpCalls = numberOfWarmUpCalls;
+    this.asynchronous = asynchronous;
+    for (CallOutcome callOutcome : CallOutcome.values()) {
+      recorders.put(callOutcome, new Recorder(HIGHEST_TRACKABLE_LATENCY_IN_MICROS, SIGNIFICANT_DIGITS));
+      totalHistograms.put(callOutcome, new Histogram(HIGHEST_TRACKABLE_LATENCY_IN_MICROS, SIGNIFICANT_DIGITS));
+    }
   }
 
   @Override
   public void run(ApplicationArguments args) throws Exception {
-    int counter = 0;
-    for (int i = 0; i < numberOfCalls; i++) {
-      log.info("making request: {}", i);
-      if (makeTargetCallGetBooleanResponse()) {
-        counter++;
+    log.info("Starting the '{}' load test: {} warm-up and {} measured calls, {} calls/s, concurrency {}, "
+            + "asynchronous: {}",
+        testMode, numberOfWarmUpCalls, numberOfCalls, arrivalRatePerSecond, concurrency, asynchronous);
+    ExecutorService callExecutor = createCallExecutor();
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    try {
+      runPhase("warm-up", numberOfWarmUpCalls, callExecutor);
+      resetStatistics();
+      reporter.scheduleAtFixedRate(this::reportLastSecond, 1, 1, TimeUnit.SECONDS);
+      long measuredPhaseStart = System.nanoTime();
+      runPhase("measurement", numberOfCalls, callExecutor);
+      reporter.shutdown();
+      reporter.awaitTermination(1, TimeUnit.SECONDS);
+      reportLastSecond();
+      reportTotal(System.nanoTime() - measuredPhaseStart);
+    } finally {
+      reporter.shutdownNow();
+      callExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Issues the calls according to the schedule and waits until all of them are finished.
+   */
+  private void runPhase(String phase, int calls, ExecutorService callExecutor) throws InterruptedException {
+    log.info("Load test phase: {}", phase);
+    Semaphore inFlightCalls = new Semaphore(concurrency);
+    long intervalInNanos = (long) (TimeUnit.SECONDS.toNanos(1) / arrivalRatePerSecond);
+    long phaseStart = System.nanoTime();
+    for (int i = 0; i < calls; i++) {
+      long intendedStart = phaseStart + i * intervalInNanos;
+      long delay;
+      while ((delay = intendedStart - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(delay);
+      }
+      if (!inFlightCalls.tryAcquire()) {
+        droppedCalls.increment();
+        continue;
+      }
+      if (asynchronous) {
+        makeCallAsync(intendedStart, inFlightCalls);
+        continue;
       }
-      Thread.sleep(500);
+      callExecutor.execute(() -> {
+        try {
+          makeCall(intendedStart);
+        } finally {
+          inFlightCalls.release();
+        }
+      });
     }
-    float result = (float) counter / numberOfCalls;
-    log.info("\n\n======================RESULT RATE: {}=======================\n\n", result);
+    inFlightCalls.acquire(concurrency);
   }
 
-  private boolean makeTargetCallGetBooleanResponse() throws InterruptedException {
-    return testMode.equals("success_rate_traditional")
-        ? testService.callExternalServiceWithDefaultBreaker()
-        : testService.callExternalServiceWithThresholdBreaker();
+  /**
+   * A call, which fails before returning its future, is recorded as a fallback as well, so its permit
+   * is released and the schedule goes on.
+   */
+  private void makeCallAsync(long intendedStart, Semaphore inFlightCalls) {
+    CompletableFuture<CallOutcome> response;
+    try {
+      response = makeTargetCallAsync();
+    } catch (RuntimeException e) {
+      log.warn("The call has failed without a fallback", e);
+      recordCall(intendedStart, CallOutcome.FALLBACK);
+      inFlightCalls.release();
+      return;
+    }
+    response.whenComplete((callOutcome, throwable) -> {
+      recordCall(intendedStart, throwable == null ? callOutcome : CallOutcome.FALLBACK);
+      inFlightCalls.release();
+    });
+  }
+
+  private void makeCall(long intendedStart) {
+    CallOutcome callOutcome;
+    try {
+      callOutcome = makeTargetCallGetOutcome();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (RuntimeException e) {
+      log.warn("The call has failed without a fallback", e);
+      callOutcome = CallOutcome.FALLBACK;
+    }
+    recordCall(intendedStart, callOutcome);
+  }
+
+  private void recordCall(long intendedStart, CallOutcome callOutcome) {
+    long latencyInMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+    recorders.get(callOutcome).recordValue(Math.min(latencyInMicros, HIGHEST_TRACKABLE_LATENCY_IN_MICROS));
+  }
+
+  private CallOutcome makeTargetCallGetOutcome() throws InterruptedException {
+    return testMode.equals(TRADITIONAL_TEST_MODE)
+        ? testService.probeExternalServiceWithDefaultBreaker()
+        : testService.probeExternalServiceWithThresholdBreaker();
+  }
+
+  private CompletableFuture<CallOutcome> makeTargetCallAsync() {
+    return testMode.equals(TRADITIONAL_TEST_MODE)
+        ? testService.probeExternalServiceWithDefaultBreakerAsync()
+        : testService.probeExternalServiceWithThresholdBreakerAsync();
+  }
+
+  private synchronized void resetStatistics() {
+    recorders.values().forEach(Recorder::reset);
+    totalHistograms.values().forEach(Histogram::reset);
+    droppedCalls.reset();
+  }
+
+  private synchronized void reportLastSecond() {
+    Map<CallOutcome, Histogram> lastSecond = new EnumMap<>(CallOutcome.class);
+    recorders.forEach((callOutcome, recorder) -> {
+      Histogram intervalHistogram = recorder.getIntervalHistogram();
+      totalHistograms.get(callOutcome).add(intervalHistogram);
+      lastSecond.put(callOutcome, intervalHistogram);
+    });
+    long permitted = lastSecond.get(CallOutcome.PERMITTED).getTotalCount();
+    long rejected = lastSecond.get(CallOutcome.REJECTED).getTotalCount();
+    long fallback = lastSecond.get(CallOutcome.FALLBACK).getTotalCount();
+    long total = permitted + rejected + fallback;
+    log.info("[{}] throughput: {} calls/s, success rate: {}, permitted/rejected/fallback: {}/{}/{}, "
+            + "p99 permitted/rejected/fallback: {}/{}/{} ms",
+        testMode, total, successRate(permitted, total), permitted, rejected, fallback,
+        p99InMillis(lastSecond.get(CallOutcome.PERMITTED)),
+        p99InMillis(lastSecond.get(CallOutcome.REJECTED)),
+        p99InMillis(lastSecond.get(CallOutcome.FALLBACK)));
+  }
+
+  private synchronized void reportTotal(long durationInNanos) {
+    long permitted = totalHistograms.get(CallOutcome.PERMITTED).getTotalCount();
+    long total = totalHistograms.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    double seconds = durationInNanos / 1e9;
+    for (Map.Entry<CallOutcome, Histogram> entry : totalHistograms.entrySet()) {
+      Histogram histogram = entry.getValue();
+      log.info("{} calls: {}, latency ms p50/p90/p99/p99.9/max: {}/{}/{}/{}/{}",
+          entry.getKey(), histogram.getTotalCount(),
+          percentileInMillis(histogram, 50), percentileInMillis(histogram, 90),
+          percentileInMillis(histogram, 99), percentileInMillis(histogram, 99.9),
+          histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue() / 1000.0);
+    }
+    log.info("Dropped arrivals (concurrency limit reached): {}, average throughput: {} calls/s",
+        droppedCalls.sum(), String.format("%.2f", total / seconds));
+    log.info("\n\n======================RESULT RATE: {}=======================\n\n", successRate(permitted, total));
+  }
+
+  private static float successRate(long permitted, long total) {
+    return total == 0 ? 0.0f : (float) permitted / total;
+  }
+
+  private static double p99InMillis(Histogram histogram) {
+    return percentileInMillis(histogram, 99);
+  }
+
+  private static double percentileInMillis(Histogram histogram, double percentile) {
+    return histogram.getTotalCount() == 0 ? 0 : histogram.getValueAtPercentile(percentile) / 1000.0;
+  }
+
+  /**
+   * Virtual threads are used when available (Java 21+), the project itself still targets Java 17.
+   */
+  private ExecutorService createCallExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.info("Virtual threads are not available, using {} platform threads", concurrency);
+      return Executors.newFixedThreadPool(concurrency);
+    }
   }
 }
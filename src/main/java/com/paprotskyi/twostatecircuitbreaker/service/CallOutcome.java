@@ -0,0 +1,19 @@
+package com.paprotskyi.twostatecircuitbreaker.service;
+
+/**
+ * The way a single protected call has ended, as seen by the caller.
+ */
+public enum CallOutcome {
+  /**
+   * The call was permitted by the circuit breaker and has succeeded.
+   */
+  PERMITTED,
+  /**
+   * The call was not permitted, because the circuit breaker is OPEN.
+   */
+  REJECTED,
+  /**
+   * The call was permitted, but has failed, so the fallback response was returned.
+   */
+  FALLBACK
+}
@@ -1,7 +1,11 @@
 package com.paprotskyi.twostatecircuitbreaker.service;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface FakeExternalService {
 
   boolean generateRandomResponseWithSameSeed() throws InterruptedException;
 
+  CompletableFuture<Boolean> generateResponseAsync();
+
 }
@@ -0,0 +1,25 @@
+package com.paprotskyi.twostatecircuitbreaker.service;
+
+/**
+ * The scripted behaviour of the simulated external service over time.
+ * Every profile is a function of the time elapsed since the service was created, so it needs no timers.
+ */
+public enum OutageProfile {
+  /**
+   * The service is randomly UP or DOWN for 1-10 second periods, the same as the blocking fake service,
+   * but the periods are calculated from the seed.
+   */
+  RANDOM_OUTAGES,
+  /**
+   * The service degrades for 15 seconds of every minute: half of the calls fail and the responses are slow.
+   */
+  BROWNOUT,
+  /**
+   * The maximum response time grows linearly from the minimum to the maximum one in two minutes.
+   */
+  LATENCY_RAMP,
+  /**
+   * 30% of the calls fail all the time.
+   */
+  PARTIAL_FAILURE
+}
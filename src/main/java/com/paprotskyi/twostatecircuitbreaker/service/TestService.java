@@ -1,8 +1,22 @@
 package com.paprotskyi.twostatecircuitbreaker.service;
 
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+
 public interface TestService {
   boolean callExternalServiceWithDefaultBreaker() throws InterruptedException;
 
   boolean callExternalServiceWithThresholdBreaker() throws InterruptedException;
 
+  Mono<Boolean> callExternalServiceWithThresholdBreakerReactive();
+
+  CallOutcome probeExternalServiceWithDefaultBreaker() throws InterruptedException;
+
+  CallOutcome probeExternalServiceWithThresholdBreaker() throws InterruptedException;
+
+  CompletableFuture<CallOutcome> probeExternalServiceWithDefaultBreakerAsync();
+
+  CompletableFuture<CallOutcome> probeExternalServiceWithThresholdBreakerAsync();
+
 }
@@ -2,7 +2,9 @@ package com.paprotskyi.twostatecircuitbreaker.service.impl;
 
 import com.paprotskyi.twostatecircuitbreaker.engine.ThresholdCircuitBreakerRegistry;
 import com.paprotskyi.twostatecircuitbreaker.engine.annotation.ThresholdCircuitBreaker;
+import com.paprotskyi.twostatecircuitbreaker.service.CallOutcome;
 import com.paprotskyi.twostatecircuitbreaker.service.TestService;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import lombok.AccessLevel;
@@ -10,6 +12,9 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
@@ -41,6 +46,65 @@ public class CircuitBreakerTestingService implements TestService {
     return fakeExternalService.generateRandomResponseWithSameSeed();
   }
 
+  /**
+   * The breaker is applied by the Resilience4j ReactorCircuitBreakerAspectExt: the permission is acquired
+   * on subscription and the outcome is recorded on the completion signal.
+   * The asynchronous fake service is used, so no thread is blocked while waiting for the response.
+   */
+  @Override
+  @ThresholdCircuitBreaker(name = "service_threshold_breaker", fallbackMethod = "reactiveFallback")
+  public Mono<Boolean> callExternalServiceWithThresholdBreakerReactive() {
+    return Mono.fromFuture(fakeExternalService::generateResponseAsync);
+  }
+
+  @Override
+  @CircuitBreaker(name = "service_default_breaker", fallbackMethod = "probeFallback")
+  public CallOutcome probeExternalServiceWithDefaultBreaker() throws InterruptedException {
+    fakeExternalService.generateRandomResponseWithSameSeed();
+    return CallOutcome.PERMITTED;
+  }
+
+  @Override
+  @ThresholdCircuitBreaker(name = "service_threshold_breaker", fallbackMethod = "probeFallback")
+  public CallOutcome probeExternalServiceWithThresholdBreaker() throws InterruptedException {
+    fakeExternalService.generateRandomResponseWithSameSeed();
+    return CallOutcome.PERMITTED;
+  }
+
+  @Override
+  @CircuitBreaker(name = "service_default_breaker", fallbackMethod = "probeFallbackAsync")
+  public CompletableFuture<CallOutcome> probeExternalServiceWithDefaultBreakerAsync() {
+    return fakeExternalService.generateResponseAsync().thenApply(response -> CallOutcome.PERMITTED);
+  }
+
+  @Override
+  @ThresholdCircuitBreaker(name = "service_threshold_breaker", fallbackMethod = "probeFallbackAsync")
+  public CompletableFuture<CallOutcome> probeExternalServiceWithThresholdBreakerAsync() {
+    return fakeExternalService.generateResponseAsync().thenApply(response -> CallOutcome.PERMITTED);
+  }
+
+  // The most specific fallback is chosen, so the rejected calls are told apart from the failed ones
+  private CallOutcome probeFallback(CallNotPermittedException e) {
+    return CallOutcome.REJECTED;
+  }
+
+  private CallOutcome probeFallback(Exception e) {
+    return CallOutcome.FALLBACK;
+  }
+
+  private CompletableFuture<CallOutcome> probeFallbackAsync(CallNotPermittedException e) {
+    return CompletableFuture.completedFuture(CallOutcome.REJECTED);
+  }
+
+  private CompletableFuture<CallOutcome> probeFallbackAsync(Exception e) {
+    return CompletableFuture.completedFuture(CallOutcome.FALLBACK);
+  }
+
+  private Mono<Boolean> reactiveFallback(Exception e) {
+    log.info("Recovered reactive fallback: {}", e.toString());
+    return Mono.just(false);
+  }
+
   private boolean fallback(Exception e) {
     e.printStackTrace();
     // This is how you can access metrics in this flow:
@@ -2,12 +2,21 @@ package com.paprotskyi.twostatecircuitbreaker.service.impl;
 
 import com.paprotskyi.twostatecircuitbreaker.exception.FailResponseException;
 import com.paprotskyi.twostatecircuitbreaker.service.FakeExternalService;
+import com.paprotskyi.twostatecircuitbreaker.service.OutageProfile;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -20,6 +29,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * fail, with randomly slow or non-slow response
  * if DOWN:
  * fail, so response with max timeout
+ * <p>
+ * The asynchronous simulator ({@link #generateResponseAsync()}) follows the configured {@link OutageProfile}.
+ * It never blocks the calling thread: the responses are completed by a single shared scheduler thread,
+ * so thousands of calls can be in flight at once. Each calling thread draws from its own SplittableRandom,
+ * split once from the seed when the thread makes its first call, so the calls share no random state
+ * and a thread sees the same stream for the same order of the first calls.
  */
 @Slf4j
 @Service
@@ -29,14 +44,36 @@ public class FakeExternalServiceImpl implements FakeExternalService {
   private static final long CLOCK_RANDOM_SEED = 13L;
   private static final int MIN_RESPONSE_TIME = 50; //50 ms
   private static final int MAX_RESPONSE_TIME = 3000;//10000; //10 seconds
+  private static final long RAMP_DURATION = TimeUnit.MINUTES.toMillis(2);
+  private static final long BROWNOUT_PERIOD = TimeUnit.MINUTES.toMillis(1);
+  private static final long BROWNOUT_DURATION = TimeUnit.SECONDS.toMillis(15);
+  private static final double BROWNOUT_FAILURE_PROBABILITY = 0.5;
+  private static final double PARTIAL_FAILURE_PROBABILITY = 0.3;
   private final Random timeRandom;
   private final Random successFailRandom;
   private final StateTimer stateTimer;
 
-  public FakeExternalServiceImpl() {
+  private final OutageProfile outageProfile;
+  private final long simulationStartNanos;
+  private final OutageSchedule outageSchedule;
+  private final SplittableRandom rootRandom;
+  private final ThreadLocal<SplittableRandom> threadRandom;
+  private final ScheduledExecutorService responseScheduler;
+
+  public FakeExternalServiceImpl(@Value("${fake-service.outage-profile:RANDOM_OUTAGES}") OutageProfile outageProfile) {
     this.timeRandom = new Random(RANDOM_SEED);
     this.successFailRandom = new Random(RANDOM_SEED);
     this.stateTimer = new StateTimer(CLOCK_RANDOM_SEED);
+    this.outageProfile = outageProfile;
+    this.simulationStartNanos = System.nanoTime();
+    this.outageSchedule = new OutageSchedule(CLOCK_RANDOM_SEED);
+    this.rootRandom = new SplittableRandom(RANDOM_SEED);
+    this.threadRandom = ThreadLocal.withInitial(this::splitRandom);
+    this.responseScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "fake-external-service");
+      thread.setDaemon(true);
+      return thread;
+    });
   }
 
   /**
@@ -63,6 +100,120 @@ public class FakeExternalServiceImpl implements FakeExternalService {
     }
   }
 
+  /**
+   * Returns a response, which is completed after the simulated response time
+   * either with true or with a {@link FailResponseException FailResponseException}.
+   * The response time and the result depend on the {@link OutageProfile} and the time elapsed since the start.
+   *
+   * @return the future response, never completed by the calling thread
+   */
+  @Override
+  public CompletableFuture<Boolean> generateResponseAsync() {
+    long elapsedTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - simulationStartNanos);
+    SplittableRandom random = threadRandom.get();
+    boolean isFailure;
+    long responseTime;
+    switch (outageProfile) {
+      case BROWNOUT -> {
+        boolean isBrownout = elapsedTime % BROWNOUT_PERIOD >= BROWNOUT_PERIOD - BROWNOUT_DURATION;
+        isFailure = isBrownout && random.nextDouble() < BROWNOUT_FAILURE_PROBABILITY;
+        responseTime = isBrownout
+            ? random.nextLong(MAX_RESPONSE_TIME / 2, MAX_RESPONSE_TIME)
+            : random.nextLong(MIN_RESPONSE_TIME, MAX_RESPONSE_TIME);
+      }
+      case LATENCY_RAMP -> {
+        long maxResponseTime = MIN_RESPONSE_TIME + 1
+            + (MAX_RESPONSE_TIME - MIN_RESPONSE_TIME) * Math.min(elapsedTime, RAMP_DURATION) / RAMP_DURATION;
+        isFailure = false;
+        responseTime = random.nextLong(MIN_RESPONSE_TIME, maxResponseTime);
+      }
+      case PARTIAL_FAILURE -> {
+        isFailure = random.nextDouble() < PARTIAL_FAILURE_PROBABILITY;
+        responseTime = random.nextLong(MIN_RESPONSE_TIME, MAX_RESPONSE_TIME);
+      }
+      default -> {
+        isFailure = !outageSchedule.isUp(elapsedTime);
+        responseTime = isFailure ? MAX_RESPONSE_TIME : random.nextLong(MIN_RESPONSE_TIME, MAX_RESPONSE_TIME);
+      }
+    }
+    CompletableFuture<Boolean> response = new CompletableFuture<>();
+    responseScheduler.schedule(() -> isFailure
+            ? response.completeExceptionally(new FailResponseException())
+            : response.complete(true),
+        responseTime, TimeUnit.MILLISECONDS);
+    return response;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    stateTimer.timer.cancel();
+    responseScheduler.shutdownNow();
+  }
+
+  // the root random is not thread safe, it is split only once per calling thread
+  private SplittableRandom splitRandom() {
+    synchronized (rootRandom) {
+      return rootRandom.split();
+    }
+  }
+
+  /**
+   * The same UP/DOWN periods as the {@link StateTimer}, but calculated on demand from the elapsed time.
+   * The state toggles are generated ahead under a lock, only when the elapsed time goes past them,
+   * and are read without locking.
+   */
+  private static class OutageSchedule {
+    private final Random random;
+    private volatile Toggles toggles = new Toggles(new long[0], 0);
+    private long nextCheckTime;
+
+    public OutageSchedule(long clockRandomSeed) {
+      this.random = new Random(clockRandomSeed);
+      this.nextCheckTime = nextDelay();
+    }
+
+    public boolean isUp(long elapsedTime) {
+      Toggles current = toggles;
+      if (elapsedTime >= current.horizon) {
+        current = generateUntil(elapsedTime);
+      }
+      int index = Arrays.binarySearch(current.times, elapsedTime);
+      int numberOfToggles = index >= 0 ? index + 1 : -index - 1;
+      return numberOfToggles % 2 == 0;
+    }
+
+    private synchronized Toggles generateUntil(long elapsedTime) {
+      long[] times = toggles.times;
+      int count = times.length;
+      while (nextCheckTime <= elapsedTime) {
+        if (random.nextDouble() < StateTimer.STATE_CHANGE_PROBABILITY) {
+          long downTime = nextCheckTime;
+          long upTime = downTime + nextDelay() + nextDelay();
+          if (count + 2 > times.length) {
+            times = Arrays.copyOf(times, Math.max(16, times.length * 2));
+          }
+          times[count++] = downTime;
+          times[count++] = upTime;
+          nextCheckTime = upTime + nextDelay();
+        } else {
+          nextCheckTime += nextDelay();
+        }
+      }
+      toggles = new Toggles(Arrays.copyOf(times, count), nextCheckTime);
+      return toggles;
+    }
+
+    private long nextDelay() {
+      return StateTimer.DELAY_MIN_TIME + random.nextInt(StateTimer.DELAY_MAX_TIME - StateTimer.DELAY_MIN_TIME);
+    }
+
+    /**
+     * The sorted toggle times, DOWN at the even indexes and UP at the odd ones, known up to the horizon.
+     */
+    private record Toggles(long[] times, long horizon) {
+    }
+  }
+
   /**
    * This timer changes the state of this service,
    */
@@ -0,0 +1,56 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EwmaTransitionPolicyTest {
+
+  private static final int WINDOW_SIZE = 10;
+  private static final long SLOW_CALL_DURATION_THRESHOLD_IN_NANOS = Duration.ofMillis(100).toNanos();
+
+  @Test
+  void appliesABatchOfTheSameCallsAsTheCallsOneByOne() {
+    EwmaTransitionPolicy oneByOne = policy();
+    EwmaTransitionPolicy batch = policy();
+    for (int i = 0; i < 2 * WINDOW_SIZE; i++) {
+      oneByOne.onSuccess(1_000L);
+      batch.onSuccess(1_000L);
+    }
+
+    for (int i = 0; i < 7; i++) {
+      oneByOne.onError(1_000L);
+    }
+    batch.onBatch(0, 0, 7, 0, 1_000L);
+
+    assertThat(batch.calculateTransitionValue(null, 0L))
+        .isCloseTo(oneByOne.calculateTransitionValue(null, 0L), within(1e-5f));
+  }
+
+  @Test
+  void takesTheSlowCallsOfABatchFromTheCounts() {
+    EwmaTransitionPolicy fastBatch = policy();
+    EwmaTransitionPolicy slowBatch = policy();
+
+    // the mean duration is below the threshold, but a half of the calls are slow
+    fastBatch.onBatch(2 * WINDOW_SIZE, 0, 0, 0, SLOW_CALL_DURATION_THRESHOLD_IN_NANOS / 2);
+    slowBatch.onBatch(WINDOW_SIZE, WINDOW_SIZE, 0, 0, SLOW_CALL_DURATION_THRESHOLD_IN_NANOS / 2);
+
+    float slowCallRateCoefficient = StateTransitionParameters.ofDefaults().getSlowCallRateCoefficient();
+    assertThat(fastBatch.calculateTransitionValue(null, 0L) - slowBatch.calculateTransitionValue(null, 0L))
+        .isGreaterThan(slowCallRateCoefficient / 4);
+  }
+
+  private static EwmaTransitionPolicy policy() {
+    CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+        .slidingWindowSize(WINDOW_SIZE)
+        .minimumNumberOfCalls(WINDOW_SIZE)
+        .slowCallDurationThreshold(Duration.ofNanos(SLOW_CALL_DURATION_THRESHOLD_IN_NANOS))
+        .build();
+    return new EwmaTransitionPolicy(circuitBreakerConfig, StateTransitionParameters.ofDefaults());
+  }
+}
@@ -0,0 +1,49 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExceptionClassifierTest {
+
+  private static final CircuitBreakerConfig CIRCUIT_BREAKER_CONFIG = CircuitBreakerConfig.custom()
+      .recordExceptions(IOException.class)
+      .ignoreExceptions(IllegalArgumentException.class)
+      .build();
+
+  @Test
+  void unwrapsTheCauseOfTheWrapperExceptionsOnly() {
+    ExceptionClassifier classifier = new ExceptionClassifier(CIRCUIT_BREAKER_CONFIG, false);
+    IOException cause = new IOException();
+
+    assertThat(classifier.unwrap(new CompletionException(cause))).isSameAs(cause);
+    assertThat(classifier.unwrap(new ExecutionException(cause))).isSameAs(cause);
+    RuntimeException wrapper = new RuntimeException(cause);
+    assertThat(classifier.unwrap(wrapper)).isSameAs(wrapper);
+    CompletionException withoutCause = new CompletionException("no cause", null);
+    assertThat(classifier.unwrap(withoutCause)).isSameAs(withoutCause);
+  }
+
+  @Test
+  void classifiesTheSameWithAndWithoutTheCachedVerdicts() {
+    ExceptionClassifier classifier = new ExceptionClassifier(CIRCUIT_BREAKER_CONFIG, false);
+    ExceptionClassifier cachingClassifier = new ExceptionClassifier(CIRCUIT_BREAKER_CONFIG, true);
+
+    for (int i = 0; i < 2; i++) {
+      for (Throwable throwable : new Throwable[] {
+          new IOException(), new IllegalArgumentException(), new IllegalStateException()}) {
+        assertThat(cachingClassifier.classify(throwable)).isEqualTo(classifier.classify(throwable));
+      }
+    }
+    assertThat(cachingClassifier.classify(new IOException())).isEqualTo(ExceptionClassifier.Verdict.RECORD);
+    assertThat(cachingClassifier.classify(new IllegalArgumentException()))
+        .isEqualTo(ExceptionClassifier.Verdict.IGNORE);
+    assertThat(cachingClassifier.classify(new IllegalStateException()))
+        .isEqualTo(ExceptionClassifier.Verdict.SUCCESS);
+  }
+}
@@ -0,0 +1,47 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StateTransitionParametersTest {
+
+  @Test
+  void rejectsAnOpenStateDurationThresholdWhichIsNotPositive() {
+    StateTransitionParameters.StateTransitionParametersBuilder builder = StateTransitionParameters.builder();
+
+    assertThatThrownBy(() -> builder.openStateDurationThreshold(Duration.ZERO).build())
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> builder.openStateDurationThreshold(Duration.ofSeconds(-1)).build())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void rejectsANegativeOrNonFiniteCoefficient() {
+    assertThatThrownBy(() -> StateTransitionParameters.builder().failureRateCoefficient(-0.1f).build())
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> StateTransitionParameters.builder().timeInOpenStateCoefficient(Float.NaN).build())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void rejectsANonFiniteTransitionRatingThreshold() {
+    assertThatThrownBy(() -> StateTransitionParameters.builder()
+        .transitionRatingThreshold(Float.POSITIVE_INFINITY).build())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void keepsTheDefaultsOfTheUnsetParameters() {
+    StateTransitionParameters parameters = StateTransitionParameters.builder()
+        .openStateDurationThreshold(Duration.ofSeconds(5))
+        .build();
+
+    assertThat(parameters.getOpenStateDurationThreshold()).isEqualTo(Duration.ofSeconds(5));
+    assertThat(parameters.getTransitionRatingThreshold())
+        .isEqualTo(StateTransitionParameters.ofDefaults().getTransitionRatingThreshold());
+  }
+}
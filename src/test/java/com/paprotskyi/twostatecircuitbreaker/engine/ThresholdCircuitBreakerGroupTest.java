@@ -0,0 +1,147 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThresholdCircuitBreakerGroupTest {
+
+  private static final int NUMBER_OF_THREADS = 8;
+  private static final int WINDOW_SIZE = 10;
+
+  @Test
+  void countsAKeyClaimedByConcurrentCallsOnce() throws InterruptedException {
+    int numberOfKeys = 1_000;
+    ThresholdCircuitBreakerGroup group = group(numberOfKeys);
+
+    // every thread records the same keys in the same order, so most of the claims race
+    runConcurrently(() -> {
+      for (long key = 1; key <= numberOfKeys; key++) {
+        group.onSuccess(key, 1, TimeUnit.MILLISECONDS);
+      }
+    });
+
+    assertThat(group.getNumberOfKeys()).isEqualTo(numberOfKeys);
+    for (long key = 1; key <= numberOfKeys; key++) {
+      assertThat(group.getState(key)).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+  }
+
+  @Test
+  void isFullAtExactlyTheExpectedNumberOfKeys() throws InterruptedException {
+    int numberOfKeys = 100;
+    ThresholdCircuitBreakerGroup group = group(numberOfKeys);
+    AtomicInteger failedClaims = new AtomicInteger();
+
+    // the last place is claimed by all the threads at once
+    runConcurrently(() -> {
+      for (long key = 1; key <= numberOfKeys; key++) {
+        try {
+          group.onSuccess(key, 1, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+          failedClaims.incrementAndGet();
+        }
+      }
+    });
+
+    assertThat(failedClaims).hasValue(0);
+    assertThat(group.getNumberOfKeys()).isEqualTo(numberOfKeys);
+    assertThatThrownBy(() -> group.onSuccess(numberOfKeys + 1, 1, TimeUnit.MILLISECONDS))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(group.getNumberOfKeys()).isEqualTo(numberOfKeys);
+    // the keys of a full group are still recorded
+    group.onSuccess(numberOfKeys, 1, TimeUnit.MILLISECONDS);
+    assertThat(group.tryAcquirePermission(numberOfKeys + 1)).isTrue();
+  }
+
+  @Test
+  void keepsKeyZeroInTheExtraSlot() {
+    ThresholdCircuitBreakerGroup group = group(2);
+    assertThat(group.getState(0L)).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(group.getNumberOfKeys()).isZero();
+
+    recordErrors(group, 0L, WINDOW_SIZE);
+
+    assertThat(group.getNumberOfKeys()).isEqualTo(1);
+    assertThat(group.getState(0L)).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(group.getDecimalFailureRate(0L)).isEqualTo(1.0f);
+    // the extra slot does not take the place of another key
+    group.onSuccess(1L, 1, TimeUnit.MILLISECONDS);
+    assertThat(group.getNumberOfKeys()).isEqualTo(2);
+    assertThat(group.getState(1L)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void opensAndClosesAKeyByItsCounters() throws InterruptedException {
+    ThresholdCircuitBreakerGroup group = group(10);
+    long key = ThresholdCircuitBreakerGroup.keyOf("tenant");
+
+    recordErrors(group, key, WINDOW_SIZE - 1);
+    assertThat(group.getState(key)).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(group.getTransitionRating(key)).isNaN();
+
+    group.onError(key, 1, TimeUnit.MILLISECONDS, new RuntimeException());
+    assertThat(group.getState(key)).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(group.tryAcquirePermission(key)).isFalse();
+    assertThat(group.getNumberOfNotPermittedCalls()).isEqualTo(1);
+    assertThat(group.tryAcquirePermission(ThresholdCircuitBreakerGroup.keyOf("another tenant"))).isTrue();
+
+    // the OPEN state lasts longer than its duration threshold, so the key is closed
+    Thread.sleep(20);
+    assertThat(group.tryAcquirePermission(key)).isTrue();
+    assertThat(group.getState(key)).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  private static ThresholdCircuitBreakerGroup group(int expectedNumberOfKeys) {
+    CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+        .slidingWindowSize(WINDOW_SIZE)
+        .minimumNumberOfCalls(WINDOW_SIZE)
+        .failureRateThreshold(50)
+        .build();
+    ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig = ThresholdCircuitBreakerConfig.builder()
+        .stateTransitionParameters(StateTransitionParameters.ofDefaults().toBuilder()
+            .openStateDurationThreshold(Duration.ofMillis(10))
+            .build())
+        .build();
+    return new ThresholdCircuitBreakerGroup("test", expectedNumberOfKeys, circuitBreakerConfig,
+        thresholdCircuitBreakerConfig, Clock.systemUTC());
+  }
+
+  private static void recordErrors(ThresholdCircuitBreakerGroup group, long key, int numberOfErrors) {
+    for (int i = 0; i < numberOfErrors; i++) {
+      group.onError(key, 1, TimeUnit.MILLISECONDS, new RuntimeException());
+    }
+  }
+
+  private static void runConcurrently(Runnable action) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          action.run();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import com.paprotskyi.twostatecircuitbreaker.engine.event.CircuitBreakerEvictedEvent;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThresholdCircuitBreakerRegistryTest {
+
+  @Test
+  void evictsTheLeastRecentlyUsedCircuitBreakersPastTheMaxSize() {
+    int maxSize = 10;
+    int numberOfCircuitBreakers = 100;
+    ThresholdCircuitBreakerRegistry registry = registry(ThresholdCircuitBreakerRegistryConfig.builder()
+        .maxSize(maxSize)
+        .build());
+    List<CircuitBreakerEvictedEvent> evictions = subscribeToEvictions(registry);
+    List<String> removals = subscribeToRemovals(registry);
+
+    for (int i = 0; i < numberOfCircuitBreakers; i++) {
+      registry.circuitBreaker("tenant-" + i);
+      assertThat(registry.getCircuitBreakersView()).hasSizeLessThanOrEqualTo(maxSize);
+    }
+
+    assertThat(registry.getCircuitBreakersView()).hasSize(maxSize);
+    assertThat(evictions).hasSize(numberOfCircuitBreakers - maxSize)
+        .allMatch(event -> event.getCause() == CircuitBreakerEvictedEvent.EvictionCause.SIZE);
+    assertThat(removals).containsExactlyElementsOf(evictions.stream()
+        .map(event -> event.getEvictedEntry().getName())
+        .toList());
+  }
+
+  @Test
+  void evictsAnIdleCircuitBreaker() throws InterruptedException {
+    ThresholdCircuitBreakerRegistry registry = registry(ThresholdCircuitBreakerRegistryConfig.builder()
+        .idleTimeout(Duration.ofMillis(50))
+        .build());
+    List<CircuitBreakerEvictedEvent> evictions = subscribeToEvictions(registry);
+    List<String> removals = subscribeToRemovals(registry);
+    registry.circuitBreaker("idle");
+    Thread.sleep(100);
+
+    // the maintenance is run by a share of the lookups, the idle one is not looked up, as a lookup is an access
+    for (int i = 0; i < 10_000 && evictions.isEmpty(); i++) {
+      registry.circuitBreaker("hot");
+    }
+
+    assertThat(registry.getCircuitBreakersView())
+        .extracting(CircuitBreaker::getName)
+        .containsExactly("hot");
+    assertThat(evictions).hasSize(1);
+    assertThat(evictions.get(0).getEvictedEntry().getName()).isEqualTo("idle");
+    assertThat(evictions.get(0).getCause()).isEqualTo(CircuitBreakerEvictedEvent.EvictionCause.IDLE);
+    assertThat(removals).containsExactly("idle");
+  }
+
+  @Test
+  void keepsACircuitBreakerReplacedBeforeItsEviction() {
+    AccessTrackingRegistryStore store = new AccessTrackingRegistryStore(true);
+    store.computeIfAbsent("tenant", CircuitBreaker::ofDefaults);
+    AccessTrackingRegistryStore.Entry evictedEntry = store.entryIterator().next().getValue();
+    CircuitBreaker replacement = CircuitBreaker.ofDefaults("tenant");
+    store.replace("tenant", replacement);
+
+    assertThat(store.remove("tenant", evictedEntry, store::remove)).isEmpty();
+
+    assertThat(store.find("tenant")).contains(replacement);
+  }
+
+  @Test
+  void switchesACircuitBreakerToAnotherStateButNotToHalfOpen() {
+    ThresholdCircuitBreakerRegistry registry = registry(ThresholdCircuitBreakerRegistryConfig.builder().build());
+    CircuitBreaker circuitBreaker = registry.circuitBreaker("tenant");
+
+    assertThat(registry.transitionState("tenant", CircuitBreaker.State.FORCED_OPEN)).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.FORCED_OPEN);
+    assertThat(registry.transitionState("tenant", CircuitBreaker.State.FORCED_OPEN)).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.FORCED_OPEN);
+    assertThatThrownBy(() -> registry.transitionState("tenant", CircuitBreaker.State.HALF_OPEN))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.FORCED_OPEN);
+    assertThat(registry.transitionState("unknown", CircuitBreaker.State.CLOSED)).isFalse();
+  }
+
+  private static ThresholdCircuitBreakerRegistry registry(ThresholdCircuitBreakerRegistryConfig registryConfig) {
+    return new ThresholdCircuitBreakerRegistry(CircuitBreakerConfig.ofDefaults(),
+        ThresholdCircuitBreakerConfig.ofDefaults(), Map.of(), registryConfig);
+  }
+
+  private static List<CircuitBreakerEvictedEvent> subscribeToEvictions(ThresholdCircuitBreakerRegistry registry) {
+    List<CircuitBreakerEvictedEvent> evictions = Collections.synchronizedList(new ArrayList<>());
+    registry.onEntryEvicted(evictions::add);
+    return evictions;
+  }
+
+  private static List<String> subscribeToRemovals(ThresholdCircuitBreakerRegistry registry) {
+    List<String> removals = Collections.synchronizedList(new ArrayList<>());
+    registry.getEventPublisher().onEntryRemoved(event -> removals.add(event.getRemovedEntry().getName()));
+    return removals;
+  }
+}
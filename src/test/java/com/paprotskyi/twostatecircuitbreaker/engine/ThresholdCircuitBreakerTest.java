@@ -0,0 +1,294 @@
+package com.paprotskyi.twostatecircuitbreaker.engine;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.event.CircuitBreakerEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThresholdCircuitBreakerTest {
+
+  private static final int NUMBER_OF_THREADS = 16;
+  private static final int WINDOW_SIZE = 10;
+  private static final Duration CALL_TIMEOUT = Duration.ofMillis(50);
+  private static final int NUMBER_OF_TIMED_CALLS = 500;
+
+  @Test
+  void exactlyOneOfTheRacingCallsOpensTheCircuitBreaker() throws InterruptedException {
+    ThresholdCircuitBreaker circuitBreaker = circuitBreaker(Duration.ofMinutes(1));
+    List<CircuitBreakerEvent.Type> events = subscribe(circuitBreaker);
+    // one call short of the minimum number of calls, so every racing error exceeds the thresholds
+    for (int i = 0; i < WINDOW_SIZE - 1; i++) {
+      circuitBreaker.onError(1, TimeUnit.MILLISECONDS, new RuntimeException());
+    }
+
+    race(() -> circuitBreaker.onError(1, TimeUnit.MILLISECONDS, new RuntimeException()));
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    awaitEvents(events, 2);
+    assertThat(events).containsExactly(
+        CircuitBreakerEvent.Type.FAILURE_RATE_EXCEEDED, CircuitBreakerEvent.Type.STATE_TRANSITION);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  void exactlyOneOfTheRacingCallsClosesTheCircuitBreaker() throws InterruptedException {
+    ThresholdCircuitBreaker circuitBreaker = circuitBreaker(Duration.ofMillis(1));
+    circuitBreaker.transitionToOpenState();
+    List<CircuitBreakerEvent.Type> events = subscribe(circuitBreaker);
+    // the OPEN state lasts longer than its duration threshold, so the refreshed rating closes it
+    Thread.sleep(10);
+    AtomicInteger permittedCalls = new AtomicInteger();
+
+    race(() -> {
+      if (circuitBreaker.tryAcquirePermission()) {
+        permittedCalls.incrementAndGet();
+      }
+    });
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    // the calls, which have lost the rating refresh before the winner has closed it, are rejected and counted
+    assertThat(permittedCalls.get()).isPositive();
+    assertThat(permittedCalls.get() + circuitBreaker.getMetrics().getNumberOfNotPermittedCalls())
+        .isEqualTo(NUMBER_OF_THREADS);
+    awaitEvents(events, 1);
+    assertThat(events).containsExactly(CircuitBreakerEvent.Type.STATE_TRANSITION);
+  }
+
+  @Test
+  void everyFlipPublishesASingleTransition() throws InterruptedException {
+    ThresholdCircuitBreaker circuitBreaker = circuitBreaker(Duration.ofMillis(1));
+    List<String> transitions = Collections.synchronizedList(new ArrayList<>());
+    circuitBreaker.getEventPublisher()
+        .onStateTransition(event -> transitions.add(event.getStateTransition().name()));
+    int numberOfFlips = 20;
+
+    for (int flip = 0; flip < numberOfFlips; flip++) {
+      // the window stays full of errors, so the first racing error of every flip opens the circuit breaker
+      race(() -> circuitBreaker.onError(1, TimeUnit.MILLISECONDS, new RuntimeException()));
+      assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+      Thread.sleep(5);
+      race(circuitBreaker::tryAcquirePermission);
+      assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    awaitEvents(transitions, 2 * numberOfFlips);
+    for (int flip = 0; flip < numberOfFlips; flip++) {
+      assertThat(transitions.get(2 * flip)).isEqualTo("CLOSED_TO_OPEN");
+      assertThat(transitions.get(2 * flip + 1)).isEqualTo("OPEN_TO_CLOSED");
+    }
+  }
+
+  @Test
+  void losingManualTransitionsAreRetried() throws InterruptedException {
+    ThresholdCircuitBreaker circuitBreaker = circuitBreaker(Duration.ofMinutes(1));
+    List<String> transitions = Collections.synchronizedList(new ArrayList<>());
+    circuitBreaker.getEventPublisher()
+        .onStateTransition(event -> transitions.add(event.getStateTransition().name()));
+
+    race(circuitBreaker::transitionToForcedOpenState);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.FORCED_OPEN);
+    awaitEvents(transitions, NUMBER_OF_THREADS);
+    // the events are published after the transitions, so they can be delivered in another order
+    assertThat(transitions).containsOnlyOnce("CLOSED_TO_FORCED_OPEN");
+    assertThat(transitions).containsOnly("CLOSED_TO_FORCED_OPEN", "FORCED_OPEN_TO_FORCED_OPEN");
+  }
+
+  @Test
+  void doesNotPinTheOpenStateUntilAPastInstant() throws InterruptedException {
+    ThresholdCircuitBreaker circuitBreaker = circuitBreaker(Duration.ofMillis(10));
+
+    circuitBreaker.transitionToOpenStateFor(Duration.ofMinutes(1));
+    Thread.sleep(20);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+
+    circuitBreaker.transitionToOpenStateUntil(Instant.now().minusSeconds(60));
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    Thread.sleep(20);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void closesTheCircuitBreakerAfterAHealthyRampUp() throws InterruptedException {
+    // the minimum number of calls is larger than the packed counters of a time based window of 2 seconds can hold
+    CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+        .slidingWindow(2, 100, CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+        .failureRateThreshold(50)
+        .build();
+    ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig = ThresholdCircuitBreakerConfig.builder()
+        .rampUpDuration(Duration.ofMillis(50))
+        .stateTransitionParameters(StateTransitionParameters.ofDefaults().toBuilder()
+            .openStateDurationThreshold(Duration.ofMinutes(1))
+            .transitionRatingThreshold(0.0f)
+            .build())
+        .build();
+    ThresholdCircuitBreaker circuitBreaker = new ThresholdCircuitBreaker("test", Clock.systemUTC(),
+        circuitBreakerConfig, thresholdCircuitBreakerConfig);
+    for (int i = 0; i < 100; i++) {
+      circuitBreaker.onSuccess(1, TimeUnit.MILLISECONDS);
+    }
+    circuitBreaker.transitionToOpenState();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (circuitBreaker.getState() == CircuitBreaker.State.OPEN && System.nanoTime() < deadline) {
+      if (circuitBreaker.tryAcquirePermission()) {
+        circuitBreaker.onSuccess(1, TimeUnit.MILLISECONDS);
+      }
+      Thread.sleep(1);
+    }
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+  }
+
+  @Test
+  void timesOutACallWhichOutlivesTheTimeoutAndRecordsItOnce() throws Exception {
+    ThresholdCircuitBreaker circuitBreaker = timeoutCircuitBreaker();
+    CompletableFuture<String> call = new CompletableFuture<>();
+
+    CompletableFuture<String> response = circuitBreaker.executeCompletionStage(() -> call).toCompletableFuture();
+
+    assertThat(response).failsWithin(Duration.ofSeconds(5)).withThrowableOfType(Exception.class)
+        .withCauseInstanceOf(TimeoutException.class);
+    // the late outcome of the call is ignored
+    call.complete("late");
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isEqualTo(1);
+    assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+    assertThat(circuitBreaker.getMetrics().getNumberOfSlowFailedCalls()).isEqualTo(1);
+  }
+
+  @Test
+  void cancelsTheTimeoutOfACallWhichCompletesFirst() throws Exception {
+    ThresholdCircuitBreaker circuitBreaker = timeoutCircuitBreaker();
+
+    CompletableFuture<String> response = circuitBreaker
+        .executeCompletionStage(() -> CompletableFuture.completedFuture("done")).toCompletableFuture();
+
+    assertThat(response).isCompletedWithValue("done");
+    Thread.sleep(4 * CALL_TIMEOUT.toMillis());
+    assertThat(circuitBreaker.getMetrics().getNumberOfBufferedCalls()).isEqualTo(1);
+    assertThat(circuitBreaker.getMetrics().getNumberOfSuccessfulCalls()).isEqualTo(1);
+    assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isZero();
+  }
+
+  @Test
+  void recordsTheCallsWhichRaceTheirTimeoutsOnce() {
+    ThresholdCircuitBreaker circuitBreaker = timeoutCircuitBreaker();
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+    AtomicInteger timedOutCalls = new AtomicInteger();
+    List<CompletableFuture<String>> responses = new ArrayList<>();
+    try {
+      for (int i = 0; i < NUMBER_OF_TIMED_CALLS; i++) {
+        responses.add(circuitBreaker.executeCompletionStage(() -> {
+          // each call completes at about its timeout, so either the call or the timer wins
+          CompletableFuture<String> call = new CompletableFuture<>();
+          scheduler.schedule(() -> call.complete("done"), CALL_TIMEOUT.toNanos(), TimeUnit.NANOSECONDS);
+          return call;
+        }).toCompletableFuture().whenComplete((result, throwable) -> {
+          if (throwable instanceof TimeoutException) {
+            timedOutCalls.incrementAndGet();
+          }
+        }));
+      }
+      CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new))
+          .exceptionally(throwable -> null)
+          .join();
+    } finally {
+      scheduler.shutdownNow();
+    }
+
+    CircuitBreaker.Metrics metrics = circuitBreaker.getMetrics();
+    assertThat(metrics.getNumberOfBufferedCalls()).isEqualTo(NUMBER_OF_TIMED_CALLS);
+    assertThat(metrics.getNumberOfFailedCalls()).isEqualTo(timedOutCalls.get());
+    assertThat(metrics.getNumberOfSuccessfulCalls()).isEqualTo(NUMBER_OF_TIMED_CALLS - timedOutCalls.get());
+  }
+
+  private static ThresholdCircuitBreaker timeoutCircuitBreaker() {
+    // the window has room for all the calls, and the thresholds are never checked, so every call is permitted
+    CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+        .slidingWindowSize(2 * NUMBER_OF_TIMED_CALLS)
+        .minimumNumberOfCalls(2 * NUMBER_OF_TIMED_CALLS)
+        .slowCallDurationThreshold(CALL_TIMEOUT)
+        .build();
+    ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig = ThresholdCircuitBreakerConfig.builder()
+        .callTimeoutMultiplier(1)
+        .build();
+    return new ThresholdCircuitBreaker("test", Clock.systemUTC(), circuitBreakerConfig,
+        thresholdCircuitBreakerConfig);
+  }
+
+  private static ThresholdCircuitBreaker circuitBreaker(Duration openStateDurationThreshold) {
+    CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+        .slidingWindowSize(WINDOW_SIZE)
+        .minimumNumberOfCalls(WINDOW_SIZE)
+        .failureRateThreshold(50)
+        .build();
+    ThresholdCircuitBreakerConfig thresholdCircuitBreakerConfig = ThresholdCircuitBreakerConfig.builder()
+        .eventBufferSize(1 << 16)
+        .stateTransitionParameters(StateTransitionParameters.ofDefaults().toBuilder()
+            .openStateDurationThreshold(openStateDurationThreshold)
+            .build())
+        .build();
+    return new ThresholdCircuitBreaker("test", Clock.systemUTC(), circuitBreakerConfig,
+        thresholdCircuitBreakerConfig);
+  }
+
+  private static List<CircuitBreakerEvent.Type> subscribe(ThresholdCircuitBreaker circuitBreaker) {
+    List<CircuitBreakerEvent.Type> events = Collections.synchronizedList(new ArrayList<>());
+    circuitBreaker.getEventPublisher().onStateTransition(event -> events.add(event.getEventType()));
+    circuitBreaker.getEventPublisher().onFailureRateExceeded(event -> events.add(event.getEventType()));
+    return events;
+  }
+
+  /**
+   * Runs the action on all the threads at once.
+   */
+  private static void race(Runnable action) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          action.run();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  /**
+   * The events are delivered by the dispatcher thread, so they are awaited, and a while longer for the extra ones.
+   */
+  private static void awaitEvents(List<?> events, int expectedNumberOfEvents) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (events.size() < expectedNumberOfEvents && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    Thread.sleep(50);
+    assertThat(events).hasSize(expectedNumberOfEvents);
+  }
+}
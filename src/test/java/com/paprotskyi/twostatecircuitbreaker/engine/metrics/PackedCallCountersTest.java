@@ -0,0 +1,47 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PackedCallCountersTest {
+
+  private static final int WINDOW_SIZE = 100;
+
+  @Test
+  void addsABatchAsTheSameCallsOneByOne() {
+    long delta = PackedCallCounters.delta(true, false);
+    long counters = 0L;
+    for (int i = 0; i < 30; i++) {
+      counters = PackedCallCounters.add(counters, PackedCallCounters.delta(false, true), WINDOW_SIZE);
+    }
+    long oneByOne = counters;
+    for (int i = 0; i < 50; i++) {
+      oneByOne = PackedCallCounters.add(oneByOne, delta, WINDOW_SIZE);
+    }
+
+    assertThat(PackedCallCounters.add(counters, delta, 50, WINDOW_SIZE)).isEqualTo(oneByOne);
+  }
+
+  @Test
+  void halvesABatchOnceAtTwiceTheWindowSize() {
+    long counters = PackedCallCounters.add(0L, PackedCallCounters.delta(false, false), 150, WINDOW_SIZE);
+
+    long updated = PackedCallCounters.add(counters, PackedCallCounters.delta(true, true), 60, WINDOW_SIZE);
+
+    assertThat(PackedCallCounters.getNumberOfCalls(updated)).isEqualTo(105);
+    assertThat(PackedCallCounters.getNumberOfFailedCalls(updated)).isEqualTo(30);
+    assertThat(PackedCallCounters.getNumberOfSlowCalls(updated)).isEqualTo(30);
+  }
+
+  @Test
+  void countsAHugeBatchAsTwiceTheWindowSize() {
+    long counters = PackedCallCounters.add(0L, PackedCallCounters.delta(false, false), 150, WINDOW_SIZE);
+
+    long updated = PackedCallCounters.add(counters, PackedCallCounters.delta(true, false), 1_000_000, WINDOW_SIZE);
+
+    assertThat(PackedCallCounters.getNumberOfCalls(updated)).isEqualTo(175);
+    assertThat(PackedCallCounters.getNumberOfFailedCalls(updated)).isEqualTo(100);
+    assertThat(PackedCallCounters.getNumberOfSlowCalls(updated)).isZero();
+  }
+}
@@ -0,0 +1,86 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RollingLatencySketchTest {
+
+  private static final Duration WINDOW_DURATION = Duration.ofSeconds(60);
+  private static final double[] QUANTILES = {0.0, 0.5, 0.9, 0.99, 0.999, 1.0};
+
+  @Test
+  void mergedSketchesHaveTheQuantilesOfASingleSketch() {
+    MutableClock clock = new MutableClock();
+    RollingLatencySketch sketch = new RollingLatencySketch(WINDOW_DURATION, clock);
+    RollingLatencySketch anotherSketch = new RollingLatencySketch(WINDOW_DURATION, clock);
+    RollingLatencySketch singleSketch = new RollingLatencySketch(WINDOW_DURATION, clock);
+    SplittableRandom random = new SplittableRandom(7L);
+
+    // the calls are spread over several intervals, the slow ones are recorded into the other sketch only
+    for (int interval = 0; interval < 4; interval++) {
+      for (int i = 0; i < 1_000; i++) {
+        long fastCall = TimeUnit.MILLISECONDS.toNanos(random.nextLong(1, 50));
+        long slowCall = TimeUnit.MILLISECONDS.toNanos(random.nextLong(50, 5_000));
+        sketch.record(fastCall);
+        anotherSketch.record(slowCall);
+        singleSketch.record(fastCall);
+        singleSketch.record(slowCall);
+      }
+      clock.advance(WINDOW_DURATION.dividedBy(6));
+    }
+
+    sketch.merge(anotherSketch);
+
+    assertThat(sketch.getNumberOfCalls()).isEqualTo(singleSketch.getNumberOfCalls()).isEqualTo(8_000);
+    for (double quantile : QUANTILES) {
+      assertThat(sketch.getQuantileInNanos(quantile)).isEqualTo(singleSketch.getQuantileInNanos(quantile));
+    }
+    // the merged calls leave the window together with the calls recorded at the same time
+    clock.advance(WINDOW_DURATION.dividedBy(6).multipliedBy(3));
+    assertThat(sketch.getNumberOfCalls()).isEqualTo(singleSketch.getNumberOfCalls()).isEqualTo(4_000);
+    assertThat(sketch.getQuantileInNanos(0.5)).isEqualTo(singleSketch.getQuantileInNanos(0.5));
+  }
+
+  @Test
+  void rejectsASketchWithAnotherWindowDuration() {
+    RollingLatencySketch sketch = new RollingLatencySketch(WINDOW_DURATION, Clock.systemUTC());
+    RollingLatencySketch anotherSketch = new RollingLatencySketch(WINDOW_DURATION.multipliedBy(2),
+        Clock.systemUTC());
+
+    assertThatThrownBy(() -> sketch.merge(anotherSketch)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static final class MutableClock extends Clock {
+
+    private Instant instant = Instant.parse("2026-01-01T00:00:00Z");
+
+    private void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
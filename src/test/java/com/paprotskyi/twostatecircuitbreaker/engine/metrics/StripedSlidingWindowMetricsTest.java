@@ -0,0 +1,124 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.metrics;
+
+import io.github.resilience4j.core.metrics.Metrics;
+import io.github.resilience4j.core.metrics.Snapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedSlidingWindowMetricsTest {
+
+  private static final int NUMBER_OF_THREADS = 8;
+
+  @Test
+  void countsEveryConcurrentOutcomeOnce() throws InterruptedException {
+    int outcomesPerThread = 4_000;
+    // the window has room for all the calls, even if the stripes do not fill up exactly evenly
+    StripedSlidingWindowMetrics metrics =
+        new StripedSlidingWindowMetrics(2 * NUMBER_OF_THREADS * outcomesPerThread, 4);
+
+    // every thread records the four outcomes in turn, 1 ms each
+    runConcurrently(outcomesPerThread, call -> metrics.record(1, TimeUnit.MILLISECONDS,
+        Metrics.Outcome.values()[call % Metrics.Outcome.values().length]));
+
+    Snapshot snapshot = metrics.getSnapshot();
+    int totalNumberOfCalls = NUMBER_OF_THREADS * outcomesPerThread;
+    assertThat(snapshot.getTotalNumberOfCalls()).isEqualTo(totalNumberOfCalls);
+    assertThat(snapshot.getNumberOfFailedCalls()).isEqualTo(totalNumberOfCalls / 2);
+    assertThat(snapshot.getTotalNumberOfSlowCalls()).isEqualTo(totalNumberOfCalls / 2);
+    assertThat(snapshot.getNumberOfSlowFailedCalls()).isEqualTo(totalNumberOfCalls / 4);
+    assertThat(snapshot.getTotalDuration().toMillis()).isEqualTo(totalNumberOfCalls);
+    assertThat(metrics.isFull()).isFalse();
+  }
+
+  @Test
+  void evictsConcurrentOutcomesAtTheWindowSize() throws InterruptedException {
+    int windowSize = 1_000;
+    StripedSlidingWindowMetrics metrics = new StripedSlidingWindowMetrics(windowSize, 4);
+
+    runConcurrently(20 * windowSize, call -> metrics.record(2, TimeUnit.MILLISECONDS, Metrics.Outcome.ERROR));
+
+    Snapshot snapshot = metrics.getSnapshot();
+    assertThat(snapshot.getTotalNumberOfCalls()).isEqualTo(windowSize);
+    assertThat(snapshot.getNumberOfFailedCalls()).isEqualTo(windowSize);
+    assertThat(snapshot.getTotalDuration().toMillis()).isEqualTo(2L * windowSize);
+  }
+
+  @Test
+  void keepsTheLatestOutcomesOfASingleThread() {
+    int windowSize = 100;
+    StripedSlidingWindowMetrics metrics = new StripedSlidingWindowMetrics(windowSize, 4);
+    for (int i = 0; i < 50 * windowSize; i++) {
+      metrics.record(1, TimeUnit.MILLISECONDS, Metrics.Outcome.ERROR);
+    }
+    assertThat(metrics.getSnapshot().getNumberOfFailedCalls()).isEqualTo(windowSize);
+
+    for (int i = 0; i < 50 * windowSize; i++) {
+      metrics.recordWithoutSnapshot(1, TimeUnit.MILLISECONDS, Metrics.Outcome.SUCCESS);
+    }
+
+    Snapshot snapshot = metrics.getSnapshot();
+    assertThat(snapshot.getTotalNumberOfCalls()).isEqualTo(windowSize);
+    assertThat(snapshot.getNumberOfFailedCalls()).isZero();
+  }
+
+  @Test
+  void isFullOnceEveryStripeIsFilled() {
+    StripedSlidingWindowMetrics metrics = new StripedSlidingWindowMetrics(10, 1);
+    for (int i = 0; i < 9; i++) {
+      metrics.record(1, TimeUnit.MILLISECONDS, Metrics.Outcome.SUCCESS);
+    }
+    assertThat(metrics.isFull()).isFalse();
+
+    metrics.record(1, TimeUnit.MILLISECONDS, Metrics.Outcome.SUCCESS);
+
+    assertThat(metrics.isFull()).isTrue();
+  }
+
+  @Test
+  void recordsABatchAtOnce() {
+    StripedSlidingWindowMetrics metrics = new StripedSlidingWindowMetrics(100, 4);
+
+    Snapshot snapshot = metrics.recordBatch(10, 5, 3, 2, 200);
+
+    assertThat(snapshot.getTotalNumberOfCalls()).isEqualTo(20);
+    assertThat(snapshot.getNumberOfFailedCalls()).isEqualTo(5);
+    assertThat(snapshot.getNumberOfSlowSuccessfulCalls()).isEqualTo(5);
+    assertThat(snapshot.getNumberOfSlowFailedCalls()).isEqualTo(2);
+    assertThat(snapshot.getTotalDuration().toMillis()).isEqualTo(200);
+  }
+
+  private static void runConcurrently(int callsPerThread, CallRecorder callRecorder) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < NUMBER_OF_THREADS; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int call = 0; call < callsPerThread; call++) {
+          callRecorder.record(call);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private interface CallRecorder {
+
+    void record(int call);
+  }
+}
@@ -0,0 +1,63 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.shared;
+
+import com.paprotskyi.twostatecircuitbreaker.engine.ThresholdCircuitBreaker;
+import com.paprotskyi.twostatecircuitbreaker.engine.ThresholdCircuitBreakerConfig;
+import com.paprotskyi.twostatecircuitbreaker.engine.metrics.PackedCallCounters;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SharedStateRegionTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void sharesTheSlotsOfTheSameFile() {
+    Path path = directory.resolve("shared-state");
+    SharedStateRegion region = new SharedStateRegion(path, 16);
+    SharedStateRegion anotherRegion = new SharedStateRegion(path, 1024);
+    SharedCircuitBreakerState state = region.stateOf("orders");
+    SharedCircuitBreakerState anotherState = anotherRegion.stateOf("orders");
+
+    assertThat(anotherRegion.getNumberOfSlots()).isEqualTo(region.getNumberOfSlots()).isEqualTo(16);
+    assertThat(state.compareAndSetStateWord(0L, 42L)).isTrue();
+    assertThat(anotherState.getStateWord()).isEqualTo(42L);
+    anotherState.record(PackedCallCounters.delta(true, false), 3, 10);
+    assertThat(PackedCallCounters.getNumberOfFailedCalls(state.getCounters())).isEqualTo(3);
+    assertThat(region.stateOf("payments").getStateWord()).isZero();
+  }
+
+  @Test
+  void opensTheCircuitBreakersOfAllTheRegionsWhenTheSharedWindowTrips() {
+    Path path = directory.resolve("shared-state");
+    ThresholdCircuitBreaker replica = circuitBreaker(new SharedStateRegion(path, 16));
+    ThresholdCircuitBreaker anotherReplica = circuitBreaker(new SharedStateRegion(path, 16));
+
+    // neither local window has reached the minimum number of calls, but the shared one has
+    replica.onError(1, TimeUnit.MILLISECONDS, new RuntimeException());
+    anotherReplica.onError(1, TimeUnit.MILLISECONDS, new RuntimeException());
+
+    assertThat(anotherReplica.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(replica.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(replica.tryAcquirePermission()).isFalse();
+    assertThat(replica.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  private static ThresholdCircuitBreaker circuitBreaker(SharedStateRegion region) {
+    // a time based window of 2 seconds keeps far fewer shared calls than the minimum number of calls
+    CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+        .slidingWindow(2, 100, CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+        .failureRateThreshold(50)
+        .build();
+    return new ThresholdCircuitBreaker("orders", Clock.systemUTC(), circuitBreakerConfig,
+        ThresholdCircuitBreakerConfig.ofDefaults(), region.stateOf("orders"));
+  }
+}
@@ -0,0 +1,75 @@
+package com.paprotskyi.twostatecircuitbreaker.engine.timeout;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashedWheelTimerTest {
+
+  private static final AtomicInteger NUMBER_OF_TIMERS = new AtomicInteger();
+
+  private final String threadName = "hashed-wheel-timer-test-" + NUMBER_OF_TIMERS.incrementAndGet();
+  private final HashedWheelTimer timer = new HashedWheelTimer(threadName, Duration.ofMillis(1), 8);
+
+  @AfterEach
+  void stopTimer() {
+    timer.stop();
+  }
+
+  @Test
+  void runsTheTimeoutsAfterMoreRoundsThanTheWheel() throws InterruptedException {
+    CountDownLatch expired = new CountDownLatch(2);
+    long start = System.nanoTime();
+
+    timer.newTimeout(expired::countDown, TimeUnit.MILLISECONDS.toNanos(5));
+    timer.newTimeout(expired::countDown, TimeUnit.MILLISECONDS.toNanos(30));
+
+    assertThat(expired.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+  }
+
+  @Test
+  void neverRunsACancelledTimeout() throws InterruptedException {
+    AtomicInteger runs = new AtomicInteger();
+    HashedWheelTimer.Timeout timeout = timer.newTimeout(runs::incrementAndGet, TimeUnit.MILLISECONDS.toNanos(10));
+
+    assertThat(timeout.cancel()).isTrue();
+    Thread.sleep(50);
+
+    assertThat(runs).hasValue(0);
+    assertThat(timeout.cancel()).isFalse();
+  }
+
+  @Test
+  void stopEndsTheTimerThread() throws InterruptedException {
+    AtomicInteger runs = new AtomicInteger();
+    timer.newTimeout(runs::incrementAndGet, TimeUnit.SECONDS.toNanos(1));
+
+    timer.stop();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (isTimerThreadAlive() && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(isTimerThreadAlive()).isFalse();
+    assertThat(runs).hasValue(0);
+    assertThatThrownBy(() -> timer.newTimeout(runs::incrementAndGet, 0)).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void theSharedTimerCannotBeStopped() {
+    assertThatThrownBy(() -> HashedWheelTimer.getSharedInstance().stop()).isInstanceOf(IllegalStateException.class);
+  }
+
+  private boolean isTimerThreadAlive() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .anyMatch(thread -> thread.getName().equals(threadName));
+  }
+}